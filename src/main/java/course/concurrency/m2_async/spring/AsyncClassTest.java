@@ -1,27 +1,35 @@
 package course.concurrency.m2_async.spring;
 
 import org.springframework.beans.factory.annotation.Autowired;
-import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.context.ApplicationContext;
-import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+import org.springframework.context.annotation.Lazy;
+import org.springframework.scheduling.annotation.Async;
 import org.springframework.stereotype.Component;
 
+import java.util.concurrent.CompletableFuture;
+
 @Component
 public class AsyncClassTest {
 
     @Autowired
     public ApplicationContext context;
 
+    // calls through the proxy, so @Async is applied to internal calls too
+    @Lazy
+    @Autowired
+    private AsyncClassTest self;
+
     @Autowired
-    @Qualifier("applicationTaskExecutor")
-    private ThreadPoolTaskExecutor executor;
+    private AsyncExecutorMetrics metrics;
 
-    public void runAsyncTask() {
+    public CompletableFuture<String> runAsyncTask() {
         System.out.println("runAsyncTask: " + Thread.currentThread().getName());
-        internalTask();
+        return self.internalTask();
     }
 
-    public void internalTask() {
-        System.out.println("internalTask: " + Thread.currentThread().getName());
+    @Async
+    public CompletableFuture<String> internalTask() {
+        System.out.println("internalTask: " + Thread.currentThread().getName() + ", " + metrics);
+        return CompletableFuture.completedFuture(Thread.currentThread().getName());
     }
 }
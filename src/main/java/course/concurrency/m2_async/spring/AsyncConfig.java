@@ -0,0 +1,111 @@
+package course.concurrency.m2_async.spring;
+
+import org.springframework.aop.interceptor.AsyncUncaughtExceptionHandler;
+import org.springframework.aop.interceptor.SimpleAsyncUncaughtExceptionHandler;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.env.Environment;
+import org.springframework.core.task.AsyncTaskExecutor;
+import org.springframework.core.task.support.TaskExecutorAdapter;
+import org.springframework.scheduling.annotation.AsyncConfigurer;
+import org.springframework.scheduling.annotation.EnableAsync;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.ThreadPoolExecutor;
+
+/**
+ * Executor for @Async methods.
+ *
+ * async.executor.type=bounded - platform threads, bounded queue, rejection policy
+ *                               from async.executor.rejection (abort or caller-runs)
+ * async.executor.type=virtual - thread per task, requires JDK 21+
+ */
+@Configuration
+@EnableAsync
+public class AsyncConfig implements AsyncConfigurer {
+
+    public enum ExecutorType { BOUNDED, VIRTUAL }
+
+    private static final int CPUS = Runtime.getRuntime().availableProcessors();
+
+    private final Environment env;
+
+    private final AsyncExecutorMetrics metrics = new AsyncExecutorMetrics();
+
+    public AsyncConfig(Environment env) {
+        this.env = env;
+    }
+
+    @Bean
+    public AsyncExecutorMetrics asyncExecutorMetrics() {
+        return metrics;
+    }
+
+    @Bean(name = "asyncExecutor")
+    public AsyncTaskExecutor asyncExecutor() {
+        if (executorType() == ExecutorType.VIRTUAL) {
+            TaskExecutorAdapter virtual = new TaskExecutorAdapter(virtualThreadExecutor());
+            virtual.setTaskDecorator(metrics);
+            return virtual;
+        }
+
+        ThreadPoolTaskExecutor bounded = new ThreadPoolTaskExecutor();
+        bounded.setThreadNamePrefix("async-");
+        int coreSize = env.getProperty("async.executor.core-size", Integer.class, CPUS);
+        int maxSize = env.getProperty("async.executor.max-size", Integer.class, CPUS * 2);
+        bounded.setCorePoolSize(coreSize);
+        bounded.setMaxPoolSize(Math.max(coreSize, maxSize));
+        bounded.setQueueCapacity(env.getProperty("async.executor.queue-capacity", Integer.class, 10_000));
+        bounded.setRejectedExecutionHandler(metrics.countingRejections(rejectionPolicy()));
+        bounded.setTaskDecorator(metrics);
+        bounded.setWaitForTasksToCompleteOnShutdown(true);
+        metrics.bindQueue(bounded);
+        return bounded;
+    }
+
+    @Override
+    public Executor getAsyncExecutor() {
+        return asyncExecutor();
+    }
+
+    @Override
+    public AsyncUncaughtExceptionHandler getAsyncUncaughtExceptionHandler() {
+        return new SimpleAsyncUncaughtExceptionHandler();
+    }
+
+    private ExecutorType executorType() {
+        String type = env.getProperty("async.executor.type", "bounded");
+        for (ExecutorType executorType : ExecutorType.values()) {
+            if (executorType.name().equalsIgnoreCase(type)) {
+                return executorType;
+            }
+        }
+        throw new IllegalStateException("Unknown async.executor.type '" + type + "', expected bounded or virtual");
+    }
+
+    private RejectedExecutionHandler rejectionPolicy() {
+        String rejection = env.getProperty("async.executor.rejection", "abort");
+        if ("caller-runs".equalsIgnoreCase(rejection)) {
+            return new ThreadPoolExecutor.CallerRunsPolicy();
+        }
+        if ("abort".equalsIgnoreCase(rejection)) {
+            return new ThreadPoolExecutor.AbortPolicy();
+        }
+        throw new IllegalStateException("Unknown async.executor.rejection '" + rejection
+                + "', expected abort or caller-runs");
+    }
+
+    // looked up reflectively: the course is compiled for Java 17
+    private static ExecutorService virtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class
+                    .getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException e) {
+            throw new IllegalStateException("Virtual threads are not supported by this JDK", e);
+        }
+    }
+}
@@ -0,0 +1,77 @@
+package course.concurrency.m2_async.spring;
+
+import org.springframework.core.task.TaskDecorator;
+import org.springframework.scheduling.concurrent.ThreadPoolTaskExecutor;
+
+import java.util.concurrent.RejectedExecutionHandler;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.IntSupplier;
+
+/**
+ * Counters of the async executor. Works as a TaskDecorator, so the same
+ * instance measures both the bounded pool and the virtual thread executor.
+ */
+public class AsyncExecutorMetrics implements TaskDecorator {
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder completed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+    private final AtomicInteger active = new AtomicInteger();
+
+    private volatile IntSupplier queueDepth = () -> 0;
+
+    @Override
+    public Runnable decorate(Runnable runnable) {
+        submitted.increment();
+        return () -> {
+            active.incrementAndGet();
+            try {
+                runnable.run();
+            } finally {
+                active.decrementAndGet();
+                completed.increment();
+            }
+        };
+    }
+
+    /**
+     * Counts rejected tasks and delegates the decision to the given policy.
+     */
+    public RejectedExecutionHandler countingRejections(RejectedExecutionHandler policy) {
+        return (r, executor) -> {
+            rejected.increment();
+            policy.rejectedExecution(r, executor);
+        };
+    }
+
+    void bindQueue(ThreadPoolTaskExecutor executor) {
+        this.queueDepth = () -> executor.getThreadPoolExecutor().getQueue().size();
+    }
+
+    public long getSubmitted() {
+        return submitted.sum();
+    }
+
+    public long getCompleted() {
+        return completed.sum();
+    }
+
+    public long getRejected() {
+        return rejected.sum();
+    }
+
+    public int getActiveThreads() {
+        return active.get();
+    }
+
+    public int getQueueDepth() {
+        return queueDepth.getAsInt();
+    }
+
+    @Override
+    public String toString() {
+        return String.format("submitted=%d,completed=%d,rejected=%d,active=%d,queue=%d",
+                getSubmitted(), getCompleted(), getRejected(), getActiveThreads(), getQueueDepth());
+    }
+}
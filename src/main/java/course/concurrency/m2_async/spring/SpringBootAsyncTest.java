@@ -5,6 +5,7 @@ import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.boot.context.event.ApplicationReadyEvent;
 import org.springframework.context.event.EventListener;
+import org.springframework.scheduling.annotation.Async;
 
 @SpringBootApplication
 public class SpringBootAsyncTest {
@@ -12,12 +13,16 @@ public class SpringBootAsyncTest {
     @Autowired
     private AsyncClassTest testClass;
 
-    // this method executes after application start
+    // this method executes after application start,
+    // on the async executor so it doesn't delay readiness
+    @Async
     @EventListener(ApplicationReadyEvent.class)
     public void actionAfterStartup() {
         testClass.runAsyncTask();
     }
 
+    // run with --spring.profiles.active=fast-startup for lazy initialization
+    // and trimmed auto-configuration, see application-fast-startup.properties
     public static void main(String[] args) {
         SpringApplication.run(SpringBootAsyncTest.class, args);
     }
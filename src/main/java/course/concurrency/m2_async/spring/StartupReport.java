@@ -0,0 +1,31 @@
+package course.concurrency.m2_async.spring;
+
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.core.Ordered;
+import org.springframework.core.annotation.Order;
+import org.springframework.stereotype.Component;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+
+/**
+ * Prints startup time and memory usage when the application is ready.
+ * Used by SpringBootStartupBenchmark to compare startup modes.
+ */
+@Component
+public class StartupReport {
+
+    public static final String PREFIX = "Startup report: ";
+
+    @Order(Ordered.HIGHEST_PRECEDENCE)
+    @EventListener(ApplicationReadyEvent.class)
+    public void report(ApplicationReadyEvent event) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        System.out.println(PREFIX + String.format("context=%d,jvm=%d,heapKb=%d,nonHeapKb=%d",
+                event.getTimeTaken().toMillis(),
+                ManagementFactory.getRuntimeMXBean().getUptime(),
+                memory.getHeapMemoryUsage().getUsed() / 1024,
+                memory.getNonHeapMemoryUsage().getUsed() / 1024));
+    }
+}
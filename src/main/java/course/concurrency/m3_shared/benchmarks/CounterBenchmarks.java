@@ -6,9 +6,13 @@ import org.openjdk.jmh.runner.RunnerException;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
 import java.util.concurrent.Semaphore;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 import java.util.concurrent.atomic.LongAdder;
 import java.util.concurrent.locks.*;
 
@@ -17,7 +21,7 @@ import java.util.concurrent.locks.*;
 @OutputTimeUnit(TimeUnit.MILLISECONDS)
 public class CounterBenchmarks {
 
-    // Change WRITERS and READERS to experiment
+    // Defaults for a single run, CounterMatrix sweeps other counts without recompiling
     public static final int WRITERS = 4;
     public static final int READERS = 4;
 
@@ -42,6 +46,32 @@ public class CounterBenchmarks {
     private long newValue;
     private long tmp = 0;
 
+    private static final VarHandle HANDLE_VALUE;
+
+    static {
+        try {
+            HANDLE_VALUE = MethodHandles.lookup().findVarHandle(CounterBenchmarks.class, "handleValue", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    private long handleValue;
+
+    // one cell per thread; cells are 16 longs (128 bytes) apart, two cache lines because of
+    // the adjacent line prefetch, the same rule as metrics.PaddedLong
+    private static final int CELLS = 64;
+    private static final int PADDING = 16;
+    private final AtomicLongArray cells = new AtomicLongArray(CELLS);
+    private final AtomicLongArray paddedCells = new AtomicLongArray(CELLS * PADDING);
+
+    // stripe values are PADDING apart like the padded cells, a lock per stripe
+    private static final int STRIPES = 8;
+    private final AtomicLongArray stripeValues = new AtomicLongArray(STRIPES * PADDING);
+    private final ReentrantLock[] stripeLocks = new ReentrantLock[STRIPES];
+
+    private final AtomicInteger threadIndexes = new AtomicInteger();
+
     @Setup
     public void setup() {
         tmp++;
@@ -49,6 +79,20 @@ public class CounterBenchmarks {
         volatileValue = tmp;
         newValue = tmp+5;
         atomic.set(value);
+        for (int i = 0; i < STRIPES; i++) {
+            stripeLocks[i] = new ReentrantLock();
+        }
+    }
+
+    // cell of the thread, unique up to CELLS threads, which a single writer per cell relies on
+    @State(Scope.Thread)
+    public static class ThreadIndex {
+        int index;
+
+        @Setup
+        public void setup(CounterBenchmarks benchmarks) {
+            index = benchmarks.threadIndexes.getAndIncrement() % CELLS;
+        }
     }
 
     public static void main(String[] args) throws RunnerException {
@@ -381,4 +425,131 @@ public class CounterBenchmarks {
     public long updateAtomicMethods() {
         return atomic.accumulateAndGet(newValue, (x1, x2) -> x1 + x2);
     }
+
+    // VarHandle: the counter needs an atomic add, but not a full fence
+
+    @Benchmark
+    @Group("VarHandle_acquireRelease")
+    @GroupThreads(WRITERS)
+    public long writeVarHandleRelease() {
+        return (long) HANDLE_VALUE.getAndAddRelease(this, 1L);
+    }
+
+    @Benchmark
+    @Group("VarHandle_acquireRelease")
+    @GroupThreads(READERS)
+    public long readVarHandleAcquire() {
+        return (long) HANDLE_VALUE.getAcquire(this);
+    }
+
+    // opaque: atomic and eventually visible, no ordering with other variables
+    @Benchmark
+    @Group("VarHandle_opaque")
+    @GroupThreads(WRITERS)
+    public long writeVarHandleOpaque() {
+        long current;
+        do {
+            current = (long) HANDLE_VALUE.getOpaque(this);
+        } while (!HANDLE_VALUE.weakCompareAndSetPlain(this, current, current + 1));
+        return current;
+    }
+
+    @Benchmark
+    @Group("VarHandle_opaque")
+    @GroupThreads(READERS)
+    public long readVarHandleOpaque() {
+        return (long) HANDLE_VALUE.getOpaque(this);
+    }
+
+    // per-thread counters: a single writer per cell needs no CAS, readers sum all cells
+
+    @Benchmark
+    @Group("PerThread_padded")
+    @GroupThreads(WRITERS)
+    public void writePerThreadPadded(ThreadIndex thread) {
+        int i = thread.index * PADDING;
+        paddedCells.setOpaque(i, paddedCells.getPlain(i) + 1);
+    }
+
+    @Benchmark
+    @Group("PerThread_padded")
+    @GroupThreads(READERS)
+    public long readPerThreadPadded() {
+        long sum = 0;
+        for (int i = 0; i < CELLS; i++) {
+            sum += paddedCells.getOpaque(i * PADDING);
+        }
+        return sum;
+    }
+
+    @Benchmark
+    @Group("PerThread_unpadded")
+    @GroupThreads(WRITERS)
+    public void writePerThreadUnpadded(ThreadIndex thread) {
+        int i = thread.index;
+        cells.setOpaque(i, cells.getPlain(i) + 1);
+    }
+
+    @Benchmark
+    @Group("PerThread_unpadded")
+    @GroupThreads(READERS)
+    public long readPerThreadUnpadded() {
+        long sum = 0;
+        for (int i = 0; i < CELLS; i++) {
+            sum += cells.getOpaque(i);
+        }
+        return sum;
+    }
+
+    // false sharing: the same writes as above without readers, only the distance between cells differs
+
+    @Benchmark
+    @Group("FalseSharing_padded")
+    @GroupThreads(WRITERS)
+    public void writeFalseSharingPadded(ThreadIndex thread) {
+        int i = thread.index * PADDING;
+        paddedCells.setOpaque(i, paddedCells.getPlain(i) + 1);
+    }
+
+    @Benchmark
+    @Group("FalseSharing_unpadded")
+    @GroupThreads(WRITERS)
+    public void writeFalseSharingUnpadded(ThreadIndex thread) {
+        int i = thread.index;
+        cells.setOpaque(i, cells.getPlain(i) + 1);
+    }
+
+    // striped lock: writers of different stripes don't contend, readers lock every stripe
+
+    @Benchmark
+    @Group("StripedLock")
+    @GroupThreads(WRITERS)
+    public void writeStripedLock(ThreadIndex thread) {
+        int stripe = thread.index % STRIPES;
+        ReentrantLock lock = stripeLocks[stripe];
+        lock.lock();
+        try {
+            // the lock orders the accesses, the array only keeps stripes apart
+            stripeValues.setPlain(stripe * PADDING, stripeValues.getPlain(stripe * PADDING) + 1);
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    @Benchmark
+    @Group("StripedLock")
+    @GroupThreads(READERS)
+    public long readStripedLock() {
+        long sum = 0;
+        for (int stripe = 0; stripe < STRIPES; stripe++) {
+            ReentrantLock lock = stripeLocks[stripe];
+            lock.lock();
+            try {
+                sum += stripeValues.getPlain(stripe * PADDING);
+            } finally {
+                lock.unlock();
+            }
+        }
+        return sum;
+    }
 }
@@ -0,0 +1,155 @@
+package course.concurrency.m3_shared.benchmarks;
+
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.runner.options.TimeValue;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+
+/**
+ * Runs every read/write group of CounterBenchmarks for a matrix of thread
+ * counts and write shares, without changing WRITERS and READERS.
+ *
+ * JMH takes the group thread counts from threadGroups() at run time, in the
+ * lexicographic order of the method names, so readX comes before writeX.
+ * Groups with only a write method (Atomic_optimistic, Atomic_accumulate,
+ * FalseSharing_*) are run with the writers of each configuration alone, once
+ * per writer count. Their rows have no readers, so they are ranked in tables
+ * of their own rather than against the mixed groups.
+ *
+ * Usage: CounterMatrix [threads] [write shares] [json file],
+ * e.g. CounterMatrix 2,4,8 0.1,0.5,0.9 counter-matrix.json
+ */
+public class CounterMatrix {
+
+    private static final String WRITE_ONLY = "Atomic_optimistic|Atomic_accumulate|FalseSharing_padded|FalseSharing_unpadded";
+
+    public static void main(String[] args) throws RunnerException, IOException {
+        int[] threads = Arrays.stream((args.length > 0 ? args[0] : "2,4,8").split(","))
+                .mapToInt(Integer::parseInt).toArray();
+        double[] writeShares = Arrays.stream((args.length > 1 ? args[1] : "0.1,0.5,0.9").split(","))
+                .mapToDouble(Double::parseDouble).toArray();
+        Path json = Path.of(args.length > 2 ? args[2] : "counter-matrix.json");
+
+        List<Row> rows = new ArrayList<>();
+        Set<Integer> writeOnlyRuns = new HashSet<>();
+        for (int total : threads) {
+            for (double writeShare : writeShares) {
+                // at least one reader and one writer, otherwise it's a different benchmark
+                int writers = Math.max(1, Math.min(total - 1, (int) Math.round(total * writeShare)));
+                int readers = total - writers;
+                rows.addAll(run(".*" + CounterBenchmarks.class.getSimpleName() + "\\.(?!" + WRITE_ONLY + ").*",
+                        readers, writers, readers, writers));
+                if (writeOnlyRuns.add(writers)) {
+                    rows.addAll(run(".*" + CounterBenchmarks.class.getSimpleName() + "\\.(" + WRITE_ONLY + ")$",
+                            0, writers, writers));
+                }
+            }
+        }
+
+        try (PrintStream out = new PrintStream(Files.newOutputStream(json))) {
+            out.print(toJson(rows));
+        }
+        System.out.println(ranking(rows));
+        System.out.println("Results: " + json.toAbsolutePath());
+    }
+
+    private static List<Row> run(String include, int readers, int writers, int... threadGroups)
+            throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(include)
+                .threadGroups(threadGroups)
+                .forks(1)
+                .warmupIterations(3)
+                .warmupTime(TimeValue.seconds(1))
+                .measurementIterations(5)
+                .measurementTime(TimeValue.seconds(1))
+                .build();
+        List<Row> rows = new ArrayList<>();
+        for (RunResult result : new Runner(options).run()) {
+            String benchmark = result.getParams().getBenchmark();
+            Row row = new Row(benchmark.substring(benchmark.lastIndexOf('.') + 1), readers, writers);
+            // JMH declares the map with raw Result values
+            for (String method : result.getSecondaryResults().keySet()) {
+                Result<?> score = result.getSecondaryResults().get(method);
+                if (method.startsWith("read")) {
+                    row.readScore += score.getScore();
+                } else {
+                    row.writeScore += score.getScore();
+                }
+            }
+            if (result.getSecondaryResults().isEmpty()) {
+                row.writeScore = result.getPrimaryResult().getScore();
+            }
+            row.unit = result.getPrimaryResult().getScoreUnit();
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    static String toJson(List<Row> rows) {
+        StringBuilder json = new StringBuilder("[\n");
+        for (int i = 0; i < rows.size(); i++) {
+            Row row = rows.get(i);
+            json.append(String.format(Locale.ROOT,
+                    "  {\"primitive\": \"%s\", \"readers\": %d, \"writers\": %d, "
+                            + "\"readScore\": %.3f, \"writeScore\": %.3f, \"totalScore\": %.3f, \"unit\": \"%s\"}",
+                    row.primitive, row.readers, row.writers,
+                    row.readScore, row.writeScore, row.total(), row.unit));
+            json.append(i < rows.size() - 1 ? ",\n" : "\n");
+        }
+        return json.append("]\n").toString();
+    }
+
+    /**
+     * One table per configuration, fastest total throughput first.
+     */
+    static String ranking(List<Row> rows) {
+        Map<String, List<Row>> byConfiguration = new LinkedHashMap<>();
+        for (Row row : rows) {
+            byConfiguration.computeIfAbsent(row.readers + " readers, " + row.writers + " writers",
+                    c -> new ArrayList<>()).add(row);
+        }
+        StringBuilder table = new StringBuilder();
+        for (Map.Entry<String, List<Row>> configuration : byConfiguration.entrySet()) {
+            List<Row> ranked = new ArrayList<>(configuration.getValue());
+            ranked.sort(Comparator.comparingDouble(Row::total).reversed());
+            table.append('\n').append(configuration.getKey()).append('\n');
+            table.append(String.format(Locale.ROOT, "%4s  %-24s %14s %14s %14s%n",
+                    "#", "primitive", "reads", "writes", "total"));
+            for (int i = 0; i < ranked.size(); i++) {
+                Row row = ranked.get(i);
+                table.append(String.format(Locale.ROOT, "%4d  %-24s %14.0f %14.0f %14.0f%n",
+                        i + 1, row.primitive, row.readScore, row.writeScore, row.total()));
+            }
+        }
+        return table.toString();
+    }
+
+    static class Row {
+        final String primitive;
+        final int readers;
+        final int writers;
+        double readScore;
+        double writeScore;
+        String unit = "";
+
+        Row(String primitive, int readers, int writers) {
+            this.primitive = primitive;
+            this.readers = readers;
+            this.writers = writers;
+        }
+
+        double total() {
+            return readScore + writeScore;
+        }
+    }
+}
@@ -0,0 +1,201 @@
+package course.concurrency.m3_shared.collections;
+
+import java.util.*;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.function.LongSupplier;
+
+/**
+ * Approximate top-K counter over a sliding time window in fixed memory.
+ *
+ * The window is a ring of buckets, one per bucket period. Every bucket keeps
+ * a Count-Min sketch of hits and a small table of candidate names: a name takes
+ * a candidate slot when its estimate is bigger than the estimate of the current
+ * owner (the Space-Saving idea, without the global min-heap). Both structures
+ * are updated with CAS only, so add() never blocks.
+ *
+ * Counts are overestimated by at most e/width * hits in the window with
+ * probability 1 - e^-depth. The bound needs rows that hash independently, so
+ * rows don't use String.hashCode(): names with the same hashCode() would meet
+ * in every row. Every row mixes a 64-bit hash of the characters with its own
+ * seed, so two names share all rows only if that hash collides.
+ */
+public class HeavyHitters {
+
+    private static final int DEPTH = 4;
+    private static final int PROBES = 4;
+
+    private final int width;
+    private final int candidates;
+    private final long bucketMillis;
+    private final LongSupplier clock;
+
+    private final AtomicReferenceArray<Bucket> buckets;
+
+    public HeavyHitters(int topK, int windowMinutes) {
+        this(topK, windowMinutes, TimeUnit.MINUTES.toMillis(1), 2048, System::currentTimeMillis);
+    }
+
+    HeavyHitters(int topK, int windowBuckets, long bucketMillis, int width, LongSupplier clock) {
+        this.width = width;
+        this.candidates = topK * 4;
+        this.bucketMillis = bucketMillis;
+        this.clock = clock;
+        this.buckets = new AtomicReferenceArray<>(windowBuckets);
+    }
+
+    public void add(String name) {
+        Bucket bucket = current();
+        long estimate = bucket.increment(name);
+        bucket.offer(name, estimate);
+    }
+
+    /**
+     * @return up to k names with the biggest estimated counts for the last
+     * {@code lastBuckets} bucket periods, in descending order
+     */
+    public List<Map.Entry<String, Long>> top(int k, int lastBuckets) {
+        long epoch = epoch();
+        List<Bucket> window = new ArrayList<>();
+        for (int i = 0; i < Math.min(lastBuckets, buckets.length()); i++) {
+            Bucket bucket = buckets.get(index(epoch - i));
+            if (bucket != null && bucket.epoch == epoch - i) {
+                window.add(bucket);
+            }
+        }
+
+        Set<String> names = new HashSet<>();
+        window.forEach(b -> b.collectCandidates(names));
+
+        List<Map.Entry<String, Long>> result = new ArrayList<>();
+        for (String name : names) {
+            long count = 0;
+            for (Bucket bucket : window) {
+                count += bucket.estimate(name);
+            }
+            result.add(Map.entry(name, count));
+        }
+        result.sort(Map.Entry.<String, Long>comparingByValue().reversed());
+        return result.size() > k ? result.subList(0, k) : result;
+    }
+
+    public List<Map.Entry<String, Long>> top(int k) {
+        return top(k, buckets.length());
+    }
+
+    private long epoch() {
+        return clock.getAsLong() / bucketMillis;
+    }
+
+    private int index(long epoch) {
+        return (int) Math.floorMod(epoch, (long) buckets.length());
+    }
+
+    private Bucket current() {
+        long epoch = epoch();
+        int index = index(epoch);
+        Bucket bucket = buckets.get(index);
+        while (bucket == null || bucket.epoch < epoch) {
+            // the slot holds an expired period: replace it, losers use the winner's bucket
+            Bucket fresh = new Bucket(epoch);
+            if (buckets.compareAndSet(index, bucket, fresh)) {
+                return fresh;
+            }
+            bucket = buckets.get(index);
+        }
+        return bucket;
+    }
+
+    // FNV-1a over the characters, computed once per call
+    private static long hash64(String name) {
+        long h = 0xCBF29CE484222325L;
+        for (int i = 0; i < name.length(); i++) {
+            h = (h ^ name.charAt(i)) * 0x100000001B3L;
+        }
+        return h;
+    }
+
+    // murmur3 fmix64 of the hash and the seed, a different function for every row or probe
+    private static int hash(long h, int seed) {
+        h += (seed + 1) * 0x9E3779B97F4A7C15L;
+        h ^= h >>> 33;
+        h *= 0xFF51AFD7ED558CCDL;
+        h ^= h >>> 33;
+        h *= 0xC4CEB9FE1A85EC53L;
+        return (int) (h ^ (h >>> 33));
+    }
+
+    private class Bucket {
+        private final long epoch;
+        private final AtomicLongArray sketch = new AtomicLongArray(DEPTH * width);
+        private final AtomicReferenceArray<String> names = new AtomicReferenceArray<>(candidates);
+
+        Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+
+        long increment(String name) {
+            long h = hash64(name);
+            long min = Long.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, sketch.incrementAndGet(cell(h, row)));
+            }
+            return min;
+        }
+
+        long estimate(String name) {
+            long h = hash64(name);
+            long min = Long.MAX_VALUE;
+            for (int row = 0; row < DEPTH; row++) {
+                min = Math.min(min, sketch.get(cell(h, row)));
+            }
+            return min;
+        }
+
+        void offer(String name, long estimate) {
+            int weakestSlot = -1;
+            long weakest = Long.MAX_VALUE;
+            String weakestName = null;
+            long h = hash64(name);
+            for (int probe = 0; probe < PROBES; probe++) {
+                int slot = Math.floorMod(hash(h, DEPTH + probe), candidates);
+                String owner = names.get(slot);
+                if (name.equals(owner)) {
+                    return;
+                }
+                if (owner == null) {
+                    if (names.compareAndSet(slot, null, name)) {
+                        return;
+                    }
+                    owner = names.get(slot);
+                    if (name.equals(owner)) {
+                        return;
+                    }
+                }
+                long ownerEstimate = owner == null ? 0 : estimate(owner);
+                if (ownerEstimate < weakest) {
+                    weakest = ownerEstimate;
+                    weakestSlot = slot;
+                    weakestName = owner;
+                }
+            }
+            if (estimate > weakest) {
+                names.compareAndSet(weakestSlot, weakestName, name);
+            }
+        }
+
+        void collectCandidates(Set<String> result) {
+            for (int i = 0; i < candidates; i++) {
+                String name = names.get(i);
+                if (name != null) {
+                    result.add(name);
+                }
+            }
+        }
+
+        private int cell(long h, int row) {
+            return row * width + Math.floorMod(hash(h, row), width);
+        }
+    }
+}
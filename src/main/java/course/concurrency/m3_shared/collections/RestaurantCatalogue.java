@@ -0,0 +1,60 @@
+package course.concurrency.m3_shared.collections;
+
+import java.util.Collection;
+
+/**
+ * Immutable open-addressing table of restaurants by name. All fields are final,
+ * so a catalogue published through a volatile reference is safely visible
+ * to readers, and a lookup is a few plain array reads.
+ */
+public final class RestaurantCatalogue {
+
+    private final String[] names;
+    private final Restaurant[] restaurants;
+    private final int mask;
+    private final int shift;
+    private final int size;
+
+    /**
+     * For duplicate names the last restaurant wins.
+     */
+    public RestaurantCatalogue(Collection<Restaurant> source) {
+        int capacity = Integer.highestOneBit(Math.max(2, source.size()) * 2 - 1) << 1;
+        this.names = new String[capacity];
+        this.restaurants = new Restaurant[capacity];
+        this.mask = capacity - 1;
+        this.shift = Integer.numberOfLeadingZeros(mask);
+
+        int count = 0;
+        for (Restaurant restaurant : source) {
+            int i = slot(restaurant.getName());
+            if (names[i] == null) {
+                names[i] = restaurant.getName();
+                count++;
+            }
+            restaurants[i] = restaurant;
+        }
+        this.size = count;
+    }
+
+    public Restaurant get(String name) {
+        int i = slot(name);
+        return names[i] == null ? null : restaurants[i];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    // index of the name or of the empty slot where it should be
+    private int slot(String name) {
+        // Fibonacci hashing: similar names have close String hashes, which
+        // would form long runs of occupied slots with plain masking
+        int i = (name.hashCode() * 0x9E3779B9) >>> shift;
+        String current;
+        while ((current = names[i]) != null && !current.equals(name)) {
+            i = (i + 1) & mask;
+        }
+        return i;
+    }
+}
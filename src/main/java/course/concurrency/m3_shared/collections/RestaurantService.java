@@ -1,31 +1,66 @@
 package course.concurrency.m3_shared.collections;
 
+import course.concurrency.m3_shared.metrics.Metrics;
+
+import java.util.Collection;
 import java.util.HashSet;
-import java.util.Map;
+import java.util.List;
 import java.util.Set;
-import java.util.concurrent.ConcurrentHashMap;
 
 public class RestaurantService {
 
-    private Map<String, Restaurant> restaurantMap = new ConcurrentHashMap<>() {{
-        put("A", new Restaurant("A"));
-        put("B", new Restaurant("B"));
-        put("C", new Restaurant("C"));
-    }};
+    // immutable snapshot, replaced as a whole on reload: one volatile read per lookup
+    private volatile RestaurantCatalogue catalogue = new RestaurantCatalogue(List.of(
+            new Restaurant("A"),
+            new Restaurant("B"),
+            new Restaurant("C")));
+
+    // write-heavy counters spread concurrent increments of the same restaurant over cells
+    private final Metrics stat = new Metrics();
+
+    // approximate mode for a huge number of distinct names, exact counting if null
+    private final HeavyHitters heavyHitters;
+    private final int topK;
+
+    public RestaurantService() {
+        this.heavyHitters = null;
+        this.topK = 0;
+    }
 
-    private Object stat;
+    public RestaurantService(int topK, int windowMinutes) {
+        this.heavyHitters = new HeavyHitters(topK, windowMinutes);
+        this.topK = topK;
+    }
 
     public Restaurant getByName(String restaurantName) {
         addToStat(restaurantName);
-        return restaurantMap.get(restaurantName);
+        return catalogue.get(restaurantName);
+    }
+
+    /**
+     * Replaces the whole catalogue. Readers keep using the previous snapshot
+     * until the new one is published. For duplicate names the last one wins.
+     */
+    public void reload(Collection<Restaurant> restaurants) {
+        catalogue = new RestaurantCatalogue(restaurants);
     }
 
     public void addToStat(String restaurantName) {
-        // your code
+        if (heavyHitters != null) {
+            heavyHitters.add(restaurantName);
+            return;
+        }
+        stat.counter(restaurantName).increment();
     }
 
+    // writers are not stopped, every counter is summed at the moment it is read
     public Set<String> printStat() {
-        // your code
-        return new HashSet<>();
+        Set<String> result = new HashSet<>();
+        if (heavyHitters != null) {
+            heavyHitters.top(topK).forEach(e -> result.add(e.getKey() + " - " + e.getValue()));
+            return result;
+        }
+        stat.snapshot().getCounters().forEach((name, count) -> result.add(name + " - " + count));
+        return result;
     }
 }
@@ -0,0 +1,219 @@
+package course.concurrency.m3_shared.immutable;
+
+import course.concurrency.m3_shared.metrics.Counter;
+import course.concurrency.m3_shared.metrics.Gauge;
+import course.concurrency.m3_shared.metrics.Histogram;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.BiConsumer;
+import java.util.function.Consumer;
+
+/**
+ * Bounded queue of ready orders, delivered in batches by worker threads.
+ * submit() blocks when the queue is full, so delivery backpressures producers
+ * instead of growing without bound.
+ *
+ * Workers exit only after shutdown, when no submit() is in progress and the
+ * queue is empty, so every accepted order is delivered or handed to the
+ * failure handler. A batch whose delivery threw is not retried: its orders
+ * are counted in getFailed() and leave the pipeline, so they may be
+ * submitted again.
+ */
+public class DeliveryPipeline {
+
+    private static final long POLL_MILLIS = 50;
+
+    private final BlockingQueue<Pending> queue;
+    private final int maxBatchSize;
+    private final Consumer<List<Order>> delivery;
+    private final ExecutorService workers;
+
+    // ids queued or being delivered, guards against submitting an order twice
+    private final Set<Long> inFlight = ConcurrentHashMap.newKeySet();
+
+    private volatile boolean stopped;
+    // submit() calls past the stopped check, workers wait for them on shutdown
+    private final AtomicInteger submitting = new AtomicInteger();
+
+    // failed batches are only counted unless a handler is set
+    private volatile BiConsumer<List<Order>, RuntimeException> failureHandler = (orders, e) -> {};
+
+    private final Counter delivered = Counter.writeHeavy();
+    private final Counter batches = Counter.writeHeavy();
+    private final Counter failed = Counter.writeHeavy();
+    private final Histogram lagNanos = new Histogram();
+    private final Gauge maxBatch = new Gauge();
+
+    public DeliveryPipeline(int workerCount, int queueCapacity, int maxBatchSize,
+                            Consumer<List<Order>> delivery) {
+        this.queue = new ArrayBlockingQueue<>(queueCapacity);
+        this.maxBatchSize = maxBatchSize;
+        this.delivery = delivery;
+
+        AtomicInteger threadNumber = new AtomicInteger();
+        this.workers = Executors.newFixedThreadPool(workerCount, r -> {
+            Thread t = new Thread(r, "delivery-" + threadNumber.incrementAndGet());
+            t.setDaemon(true);
+            return t;
+        });
+        for (int i = 0; i < workerCount; i++) {
+            workers.execute(this::work);
+        }
+    }
+
+    /**
+     * Called by the worker with the orders of a batch whose delivery threw,
+     * e.g. to log them or keep them for a later retry. They are already out of
+     * the pipeline then, but submitting them from the handler blocks the
+     * worker while the queue is full. By default they are only counted.
+     */
+    public void setFailureHandler(BiConsumer<List<Order>, RuntimeException> failureHandler) {
+        this.failureHandler = failureHandler;
+    }
+
+    /**
+     * @return false if the order is already queued or being delivered
+     */
+    public boolean submit(Order order) throws InterruptedException {
+        submitting.incrementAndGet();
+        try {
+            if (stopped) {
+                throw new RejectedExecutionException("Delivery pipeline is stopped");
+            }
+            if (!inFlight.add(order.getId())) {
+                return false;
+            }
+            Pending pending = new Pending(order, System.nanoTime());
+            while (!queue.offer(pending, POLL_MILLIS, TimeUnit.MILLISECONDS)) {
+                if (workers.isTerminated()) {
+                    inFlight.remove(order.getId());
+                    throw new RejectedExecutionException("Delivery workers are terminated");
+                }
+            }
+            return true;
+        } finally {
+            submitting.decrementAndGet();
+        }
+    }
+
+    private boolean isDrained() {
+        // a submit() that starts after this read sees stopped and is rejected
+        return stopped && submitting.get() == 0 && queue.isEmpty();
+    }
+
+    private void work() {
+        List<Pending> batch = new ArrayList<>(maxBatchSize);
+        List<Order> orders = new ArrayList<>(maxBatchSize);
+        while (!isDrained()) {
+            try {
+                Pending first = queue.poll(POLL_MILLIS, TimeUnit.MILLISECONDS);
+                if (first == null) {
+                    continue;
+                }
+                batch.add(first);
+                queue.drainTo(batch, maxBatchSize - 1);
+                deliver(batch, orders);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            } catch (RuntimeException e) {
+                // released first, so they may be submitted again
+                batch.forEach(p -> inFlight.remove(p.order.getId()));
+                failed.add(orders.size());
+                failureHandler.accept(List.copyOf(orders), e);
+            } finally {
+                batch.forEach(p -> inFlight.remove(p.order.getId()));
+                batch.clear();
+                orders.clear();
+            }
+        }
+    }
+
+    private void deliver(List<Pending> batch, List<Order> orders) {
+        long now = System.nanoTime();
+        for (Pending pending : batch) {
+            lagNanos.record(now - pending.enqueuedNanos);
+            orders.add(pending.order);
+        }
+        delivery.accept(orders);
+
+        delivered.add(batch.size());
+        batches.increment();
+        maxBatch.setMax(batch.size());
+    }
+
+    /**
+     * Stops accepting orders and waits until queued orders are delivered.
+     *
+     * @return false if workers are still delivering after a minute
+     */
+    public boolean shutdown() throws InterruptedException {
+        stopped = true;
+        workers.shutdown();
+        return workers.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    public int getQueueSize() {
+        return queue.size();
+    }
+
+    public long getDelivered() {
+        return delivered.get();
+    }
+
+    /**
+     * Orders of batches whose delivery threw.
+     */
+    public long getFailed() {
+        return failed.get();
+    }
+
+    public long getBatches() {
+        return batches.get();
+    }
+
+    public double getAverageBatchSize() {
+        long count = batches.get();
+        return count == 0 ? 0 : (double) delivered.get() / count;
+    }
+
+    public int getMaxBatchSize() {
+        return (int) maxBatch.get();
+    }
+
+    /**
+     * Nanoseconds from submit() to the start of the delivery of each order.
+     */
+    public Histogram.Snapshot getLag() {
+        return lagNanos.snapshot();
+    }
+
+    public double getAverageLagMillis() {
+        return lagNanos.snapshot().getMean() / 1_000_000.0;
+    }
+
+    public double getMaxLagMillis() {
+        return lagNanos.snapshot().getMax() / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("queue=%d,delivered=%d,failed=%d,batches=%d,avgBatch=%.1f,maxBatch=%d,avgLagMs=%.2f,maxLagMs=%.2f",
+                getQueueSize(), getDelivered(), getFailed(), getBatches(), getAverageBatchSize(), getMaxBatchSize(),
+                getAverageLagMillis(), getMaxLagMillis());
+    }
+
+    private static class Pending {
+        private final Order order;
+        private final long enqueuedNanos;
+
+        Pending(Order order, long enqueuedNanos) {
+            this.order = order;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+    }
+}
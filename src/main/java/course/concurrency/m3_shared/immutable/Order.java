@@ -4,34 +4,61 @@ import java.util.List;
 
 import static course.concurrency.m3_shared.immutable.Order.Status.NEW;
 
-public class Order {
+/**
+ * Immutable order: every transition returns a new instance.
+ */
+public final class Order {
 
     public enum Status { NEW, IN_PROGRESS, DELIVERED }
 
-    private Long id;
-    private List<Item> items;
-    private PaymentInfo paymentInfo;
-    private boolean isPacked;
-    private Status status;
+    private final Long id;
+    private final List<Item> items;
+    private final PaymentInfo paymentInfo;
+    private final boolean isPacked;
+    private final Status status;
 
     public Order(List<Item> items) {
+        this(null, items == null ? null : List.copyOf(items), null, false, NEW);
+    }
+
+    private Order(Long id, List<Item> items, PaymentInfo paymentInfo, boolean isPacked, Status status) {
+        this.id = id;
         this.items = items;
-        this.status = NEW;
+        this.paymentInfo = paymentInfo;
+        this.isPacked = isPacked;
+        this.status = status;
+    }
+
+    public boolean checkStatus() {
+        return items != null && !items.isEmpty() && paymentInfo != null && isPacked;
     }
 
-    public synchronized boolean checkStatus() {
-        if (items != null && !items.isEmpty() && paymentInfo != null && isPacked) {
-            return true;
+    public Order withId(Long id) {
+        return new Order(id, items, paymentInfo, isPacked, status);
+    }
+
+    public Order withPaymentInfo(PaymentInfo paymentInfo) {
+        return new Order(id, items, paymentInfo, isPacked, progress());
+    }
+
+    public Order withPacked(boolean packed) {
+        if (isPacked == packed && status != NEW) {
+            return this;
         }
-        return false;
+        return new Order(id, items, paymentInfo, packed, progress());
     }
 
-    public Long getId() {
-        return id;
+    public Order delivered() {
+        return new Order(id, items, paymentInfo, isPacked, Status.DELIVERED);
     }
 
-    public void setId(Long id) {
-        this.id = id;
+    // a repeated payment or packing must not move a delivered order back
+    private Status progress() {
+        return status == NEW ? Status.IN_PROGRESS : status;
+    }
+
+    public Long getId() {
+        return id;
     }
 
     public List<Item> getItems() {
@@ -42,25 +69,11 @@ public class Order {
         return paymentInfo;
     }
 
-    public void setPaymentInfo(PaymentInfo paymentInfo) {
-        this.paymentInfo = paymentInfo;
-        this.status = Status.IN_PROGRESS;
-    }
-
     public boolean isPacked() {
         return isPacked;
     }
 
-    public void setPacked(boolean packed) {
-        isPacked = packed;
-        this.status = Status.IN_PROGRESS;
-    }
-
     public Status getStatus() {
         return status;
     }
-
-    public void setStatus(Status status) {
-        this.status = status;
-    }
 }
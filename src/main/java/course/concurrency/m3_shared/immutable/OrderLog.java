@@ -0,0 +1,273 @@
+package course.concurrency.m3_shared.immutable;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.lang.invoke.VarHandle;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+/**
+ * Append-only, memory-mapped write-ahead log of order events. OrderService
+ * syncs an event before the change becomes visible in memory, so a crash may
+ * lose a change nobody saw, but never one that was seen.
+ *
+ * Record: [long orderId][int value][byte type][3 bytes padding]. The type byte
+ * is written last, after a release fence, and a mapped file is zero filled, so
+ * a record with type 0 was never completed (a crash between reserving and
+ * writing it) and is skipped.
+ *
+ * Appends reserve their place with a single getAndAdd and write to the mapping
+ * in parallel. sync() does group commit: one force() covers every record that
+ * was written before it started, so concurrent callers share it. A segment is
+ * forced while some appender to it hasn't returned from sync() yet.
+ *
+ * The log only grows, so replay gets slower with every order. compact()
+ * rewrites a closed log with the delivered orders folded into id ranges and
+ * only the events of undelivered orders kept.
+ */
+public class OrderLog implements Closeable {
+
+    /**
+     * ARCHIVED is written by compact(): value orders from orderId on are delivered.
+     */
+    public enum EventType { CREATED, PAYMENT, PACKED, DELIVERED, ARCHIVED }
+
+    public interface Replay {
+        void apply(EventType type, long orderId, int value);
+    }
+
+    private static final int RECORD_SIZE = 16;
+    private static final int DEFAULT_SEGMENT_SIZE = 64 * 1024 * 1024;
+
+    private final FileChannel channel;
+    private final int segmentSize;
+    private final CopyOnWriteArrayList<Segment> segments = new CopyOnWriteArrayList<>();
+
+    private final AtomicLong position = new AtomicLong();
+    private final long replayEnd;
+
+    // group commit state, changed under syncLock
+    private final Object syncLock = new Object();
+    private volatile long forcesStarted;
+    private volatile long forcesCompleted;
+
+    public OrderLog(Path file) {
+        this(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    OrderLog(Path file, int segmentSize) {
+        if (segmentSize % RECORD_SIZE != 0) {
+            throw new IllegalArgumentException("Segment size must be a multiple of " + RECORD_SIZE);
+        }
+        this.segmentSize = segmentSize;
+        try {
+            this.channel = FileChannel.open(file, CREATE, READ, WRITE);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        this.replayEnd = findEnd();
+        this.position.set(replayEnd);
+    }
+
+    /**
+     * @return log position after the record, to be passed to sync()
+     */
+    public long append(EventType type, long orderId, int value) {
+        long offset = position.getAndAdd(RECORD_SIZE);
+        Segment segment = segment((int) (offset / segmentSize));
+        int index = (int) (offset % segmentSize);
+        segment.buffer.putLong(index, orderId);
+        segment.buffer.putInt(index + 8, value);
+        segment.pending.increment();
+        // the marker must not reach the mapping before the record it completes
+        VarHandle.releaseFence();
+        segment.buffer.put(index + 12, (byte) (type.ordinal() + 1));
+        return offset + RECORD_SIZE;
+    }
+
+    /**
+     * Returns when the records ending at the given positions, and every record
+     * appended before them by the same thread, are on disk.
+     */
+    public void sync(long... positions) {
+        // any force started after this point covers records written before it
+        VarHandle.fullFence();
+        long ticket = forcesStarted;
+        synchronized (syncLock) {
+            if (forcesCompleted <= ticket) {
+                long number = ++forcesStarted;
+                for (Segment segment : segments) {
+                    if (segment.pending.sum() > 0) {
+                        segment.buffer.force();
+                    }
+                }
+                forcesCompleted = number;
+            }
+        }
+        for (long position : positions) {
+            segment((int) ((position - 1) / segmentSize)).pending.decrement();
+        }
+    }
+
+    /**
+     * Replays records written before this log was opened.
+     */
+    public void replay(Replay replay) {
+        EventType[] types = EventType.values();
+        for (long offset = 0; offset < replayEnd; offset += RECORD_SIZE) {
+            MappedByteBuffer buffer = segment((int) (offset / segmentSize)).buffer;
+            int index = (int) (offset % segmentSize);
+            byte type = buffer.get(index + 12);
+            if (type != 0) {
+                replay.apply(types[type - 1], buffer.getLong(index), buffer.getInt(index + 8));
+            }
+        }
+    }
+
+    public long size() {
+        return position.get();
+    }
+
+    @Override
+    public void close() throws IOException {
+        synchronized (syncLock) {
+            segments.forEach(segment -> segment.buffer.force());
+        }
+        channel.close();
+    }
+
+    // position after the last completed record
+    private long findEnd() {
+        long end = 0;
+        try {
+            for (long offset = 0; offset < channel.size(); offset += RECORD_SIZE) {
+                MappedByteBuffer buffer = segment((int) (offset / segmentSize)).buffer;
+                if (buffer.get((int) (offset % segmentSize) + 12) != 0) {
+                    end = offset + RECORD_SIZE;
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return end;
+    }
+
+    /**
+     * Rewrites a log that is not open: delivered orders become ARCHIVED id
+     * ranges, undelivered orders keep their CREATED, PAYMENT and PACKED events.
+     * The result replaces the file atomically, a crash leaves the old log.
+     */
+    public static void compact(Path file) throws IOException {
+        compact(file, DEFAULT_SEGMENT_SIZE);
+    }
+
+    static void compact(Path file, int segmentSize) throws IOException {
+        // delivered id ranges, first id -> last id
+        TreeMap<Long, Long> delivered = new TreeMap<>();
+        // undelivered orders in id order: item count and events seen
+        TreeMap<Long, long[]> open = new TreeMap<>();
+        try (OrderLog log = new OrderLog(file, segmentSize)) {
+            log.replay((type, orderId, value) -> {
+                switch (type) {
+                    case CREATED:
+                        open.put(orderId, new long[]{value, 0});
+                        break;
+                    case PAYMENT:
+                    case PACKED:
+                        long[] order = open.get(orderId);
+                        if (order != null) {
+                            order[1] |= 1L << type.ordinal();
+                        }
+                        break;
+                    case DELIVERED:
+                        open.remove(orderId);
+                        addRange(delivered, orderId, orderId);
+                        break;
+                    case ARCHIVED:
+                        addRange(delivered, orderId, orderId + value - 1);
+                        break;
+                }
+            });
+        }
+
+        Path compacted = file.resolveSibling(file.getFileName() + ".compact");
+        Files.deleteIfExists(compacted);
+        // close() forces every segment
+        try (OrderLog log = new OrderLog(compacted, segmentSize)) {
+            for (Map.Entry<Long, Long> range : delivered.entrySet()) {
+                for (long first = range.getKey(); first <= range.getValue(); first += Integer.MAX_VALUE) {
+                    int count = (int) Math.min(Integer.MAX_VALUE, range.getValue() - first + 1);
+                    log.append(EventType.ARCHIVED, first, count);
+                }
+            }
+            for (Map.Entry<Long, long[]> order : open.entrySet()) {
+                long id = order.getKey();
+                long events = order.getValue()[1];
+                log.append(EventType.CREATED, id, (int) order.getValue()[0]);
+                for (EventType type : new EventType[]{EventType.PAYMENT, EventType.PACKED}) {
+                    if ((events & 1L << type.ordinal()) != 0) {
+                        log.append(type, id, 0);
+                    }
+                }
+            }
+        }
+        Files.move(compacted, file, ATOMIC_MOVE, REPLACE_EXISTING);
+    }
+
+    // ranges are inclusive and kept merged
+    private static void addRange(TreeMap<Long, Long> ranges, long first, long last) {
+        Map.Entry<Long, Long> before = ranges.floorEntry(first);
+        if (before != null && before.getValue() >= first - 1) {
+            first = before.getKey();
+            last = Math.max(last, before.getValue());
+        }
+        Map.Entry<Long, Long> after;
+        while ((after = ranges.higherEntry(first)) != null && after.getKey() <= last + 1) {
+            last = Math.max(last, after.getValue());
+            ranges.remove(after.getKey());
+        }
+        ranges.put(first, last);
+    }
+
+    private Segment segment(int number) {
+        if (number < segments.size()) {
+            return segments.get(number);
+        }
+        synchronized (segments) {
+            try {
+                while (segments.size() <= number) {
+                    // mapping beyond the end extends the file with zeros
+                    segments.add(new Segment(channel.map(FileChannel.MapMode.READ_WRITE,
+                            (long) segments.size() * segmentSize, segmentSize)));
+                }
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+            return segments.get(number);
+        }
+    }
+
+    private static class Segment {
+        private final MappedByteBuffer buffer;
+        // appends not yet confirmed by sync()
+        private final LongAdder pending = new LongAdder();
+
+        Segment(MappedByteBuffer buffer) {
+            this.buffer = buffer;
+        }
+    }
+}
@@ -1,46 +1,250 @@
 package course.concurrency.m3_shared.immutable;
 
-import java.util.HashMap;
+import course.concurrency.m3_shared.immutable.OrderLog.EventType;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.time.Duration;
+import java.util.Collections;
+import java.util.LinkedHashSet;
 import java.util.List;
-import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.UnaryOperator;
 
 public class OrderService {
 
-    private Map<Long, Order> currentOrders = new HashMap<>();
-    private long nextId = 0L;
+    private final OrderStore currentOrders = new OrderStore();
+    private final AtomicLong nextId = new AtomicLong();
+
+    // delivers ready orders in background batches, inline delivery if null
+    private final DeliveryPipeline deliveryPipeline;
+
+    // delivered orders in delivery order, archived when the retention window is over
+    private final Queue<Delivered> retained = new ConcurrentLinkedQueue<>();
+    private volatile long retentionNanos = 0;
+
+    // every state change is appended and synced before it is applied, not persisted if null
+    private final OrderLog orderLog;
+
+    public OrderService() {
+        this(null, 0, 0, 0);
+    }
+
+    public OrderService(int deliveryWorkers, int deliveryQueueCapacity, int deliveryBatchSize) {
+        this(null, deliveryWorkers, deliveryQueueCapacity, deliveryBatchSize);
+    }
+
+    private OrderService(OrderLog orderLog, int deliveryWorkers, int deliveryQueueCapacity, int deliveryBatchSize) {
+        this.orderLog = orderLog;
+        this.deliveryPipeline = deliveryWorkers == 0 ? null
+                : new DeliveryPipeline(deliveryWorkers, deliveryQueueCapacity, deliveryBatchSize, this::deliverBatch);
+    }
+
+    /**
+     * Restores orders from the log and keeps logging to it.
+     */
+    public static OrderService recover(OrderLog orderLog) {
+        return recover(orderLog, 0, 0, 0);
+    }
+
+    // replays after construction, so no delivery sees a partly built service
+    public static OrderService recover(OrderLog orderLog, int deliveryWorkers, int deliveryQueueCapacity,
+                                       int deliveryBatchSize) {
+        OrderService service = new OrderService(orderLog, deliveryWorkers, deliveryQueueCapacity, deliveryBatchSize);
+        service.replay();
+        return service;
+    }
 
-    private synchronized long nextId() {
-        return nextId++;
+    /**
+     * How long delivered orders stay in the active store before only
+     * the fact of delivery is kept. Zero archives them right away.
+     */
+    public void setDeliveredRetention(Duration retention) {
+        this.retentionNanos = retention.toNanos();
     }
 
-    public synchronized long createOrder(List<Item> items) {
+    private long nextId() {
+        return nextId.getAndIncrement();
+    }
+
+    public long createOrder(List<Item> items) {
         long id = nextId();
-        Order order = new Order(items);
-        order.setId(id);
-        currentOrders.put(id, order);
+        if (orderLog != null) {
+            orderLog.sync(orderLog.append(EventType.CREATED, id, items.size()));
+        }
+        currentOrders.put(id, new Order(items).withId(id));
         return id;
     }
 
-    public synchronized void updatePaymentInfo(long orderId, PaymentInfo paymentInfo) {
-        currentOrders.get(orderId).setPaymentInfo(paymentInfo);
-        if (currentOrders.get(orderId).checkStatus()) {
-            deliver(currentOrders.get(orderId));
+    public void updatePaymentInfo(long orderId, PaymentInfo paymentInfo) {
+        update(orderId, EventType.PAYMENT, order -> order.withPaymentInfo(paymentInfo));
+    }
+
+    public void setPacked(long orderId) {
+        update(orderId, EventType.PACKED, order -> order.withPacked(true));
+    }
+
+    /*
+     * Optimistic transition: orders are immutable, so a new version replaces
+     * the one it was built from or the transition is retried. Only the thread
+     * whose transition made the order complete delivers it.
+     *
+     * The event is logged before the first attempt that changes the order.
+     * Transitions only set a flag, so a retry applies the logged event again.
+     */
+    private void update(long orderId, EventType event, UnaryOperator<Order> transition) {
+        boolean logged = event == null || orderLog == null;
+        while (true) {
+            Order current = currentOrders.get(orderId);
+            if (current == null) {
+                if (currentOrders.isArchived(orderId)) {
+                    // already delivered and archived
+                    return;
+                }
+                throw new IllegalArgumentException("Unknown order " + orderId);
+            }
+            Order next = transition.apply(current);
+            // delivery is logged by deliverBatch, event is null then
+            if (next != current && !logged) {
+                orderLog.sync(orderLog.append(event, orderId, 0));
+                logged = true;
+            }
+            if (next == current || currentOrders.compareAndSet(orderId, current, next)) {
+                if (!current.checkStatus() && next.checkStatus()) {
+                    scheduleDelivery(next);
+                }
+                return;
+            }
         }
     }
 
-    public synchronized void setPacked(long orderId) {
-        currentOrders.get(orderId).setPacked(true);
-        if (currentOrders.get(orderId).checkStatus()) {
-            deliver(currentOrders.get(orderId));
+    private void scheduleDelivery(Order order) {
+        if (deliveryPipeline == null) {
+            deliverBatch(List.of(order));
+            return;
+        }
+        try {
+            deliveryPipeline.submit(order);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IllegalStateException("Interrupted while scheduling delivery of order " + order.getId(), e);
         }
     }
 
-    private synchronized void deliver(Order order) {
+    private void deliverBatch(List<Order> orders) {
         /* ... */
-        currentOrders.get(order.getId()).setStatus(Order.Status.DELIVERED);
+        if (orderLog != null) {
+            // one sync for the whole batch
+            long[] positions = new long[orders.size()];
+            for (int i = 0; i < positions.length; i++) {
+                positions[i] = orderLog.append(EventType.DELIVERED, orders.get(i).getId(), 0);
+            }
+            orderLog.sync(positions);
+        }
+        for (Order order : orders) {
+            update(order.getId(), null, o -> o.getStatus() == Order.Status.DELIVERED ? o : o.delivered());
+            retire(order.getId());
+        }
+    }
+
+    /*
+     * Events of one order may be logged out of order (payment and packing race
+     * with each other and with delivery), so replay only moves orders forward
+     * and ignores events for archived orders.
+     */
+    private void replay() {
+        Set<Long> ready = new LinkedHashSet<>();
+        orderLog.replay((type, orderId, value) -> {
+            if (type == EventType.ARCHIVED) {
+                currentOrders.markArchived(orderId, value);
+                nextId.accumulateAndGet(orderId + value, Math::max);
+                return;
+            }
+            if (type == EventType.CREATED) {
+                currentOrders.put(orderId, new Order(Collections.nCopies(value, new Item())).withId(orderId));
+                nextId.accumulateAndGet(orderId + 1, Math::max);
+                return;
+            }
+            Order current = currentOrders.get(orderId);
+            if (current == null) {
+                return;
+            }
+            if (type == EventType.DELIVERED) {
+                ready.remove(orderId);
+                currentOrders.archive(orderId);
+                return;
+            }
+            Order next = type == EventType.PAYMENT ? current.withPaymentInfo(new PaymentInfo()) : current.withPacked(true);
+            currentOrders.compareAndSet(orderId, current, next);
+            if (next.checkStatus()) {
+                ready.add(orderId);
+            }
+        });
+        // the service stopped between completing these orders and delivering them
+        ready.forEach(orderId -> scheduleDelivery(currentOrders.get(orderId)));
+    }
+
+    // amortised eviction: every delivery archives the orders whose retention is over
+    private void retire(long orderId) {
+        long now = System.nanoTime();
+        long retention = retentionNanos;
+        if (retention == 0) {
+            currentOrders.archive(orderId);
+        } else {
+            retained.offer(new Delivered(orderId, now));
+        }
+
+        Delivered oldest;
+        while ((oldest = retained.peek()) != null && now - oldest.deliveredAt >= retention) {
+            if (retained.remove(oldest)) {
+                currentOrders.archive(oldest.orderId);
+            }
+        }
+    }
+
+    public boolean isDelivered(long orderId) {
+        Order order = currentOrders.get(orderId);
+        if (order == null) {
+            return currentOrders.isArchived(orderId);
+        }
+        return order.getStatus().equals(Order.Status.DELIVERED);
+    }
+
+    OrderStore getOrderStore() {
+        return currentOrders;
     }
 
-    public synchronized boolean isDelivered(long orderId) {
-        return currentOrders.get(orderId).getStatus().equals(Order.Status.DELIVERED);
+    public DeliveryPipeline getDeliveryPipeline() {
+        return deliveryPipeline;
+    }
+
+    /**
+     * Waits until orders scheduled for delivery are delivered.
+     */
+    public void shutdown() throws InterruptedException {
+        if (deliveryPipeline != null && !deliveryPipeline.shutdown()) {
+            // workers still append to the log, so it stays open
+            throw new IllegalStateException("Orders are still being delivered: " + deliveryPipeline);
+        }
+        if (orderLog != null) {
+            try {
+                orderLog.close();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+    }
+
+    private static class Delivered {
+        private final long orderId;
+        private final long deliveredAt;
+
+        Delivered(long orderId, long deliveredAt) {
+            this.orderId = orderId;
+            this.deliveredAt = deliveredAt;
+        }
     }
 }
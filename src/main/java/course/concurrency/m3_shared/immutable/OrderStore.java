@@ -0,0 +1,143 @@
+package course.concurrency.m3_shared.immutable;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Orders by id without boxing: ids are sequential, so they are grouped into
+ * chunks of CHUNK_SIZE slots and only chunks are kept in a map.
+ *
+ * Archived (delivered and evicted) orders leave one bit in the chunk. When all
+ * orders of a chunk are archived the slot array is released, so a long running
+ * service keeps about 8 bytes per 64 archived orders.
+ */
+class OrderStore {
+
+    private static final int CHUNK_BITS = 16;
+    private static final int CHUNK_SIZE = 1 << CHUNK_BITS;
+    private static final int CHUNK_MASK = CHUNK_SIZE - 1;
+
+    private final ConcurrentHashMap<Long, Chunk> chunks = new ConcurrentHashMap<>();
+
+    public void put(long id, Order order) {
+        chunk(id, true).put(slot(id), order);
+    }
+
+    public Order get(long id) {
+        Chunk chunk = chunk(id, false);
+        return chunk == null ? null : chunk.get(slot(id));
+    }
+
+    public boolean compareAndSet(long id, Order expected, Order order) {
+        Chunk chunk = chunk(id, false);
+        return chunk != null && chunk.compareAndSet(slot(id), expected, order);
+    }
+
+    /**
+     * Removes the order and remembers it as delivered.
+     */
+    public void archive(long id) {
+        Chunk chunk = chunk(id, false);
+        if (chunk != null) {
+            chunk.archive(slot(id));
+        }
+    }
+
+    /**
+     * Remembers count orders from id on that were delivered before they were
+     * ever put here. Sets whole words of archived bits at a time.
+     */
+    public void markArchived(long id, long count) {
+        long end = id + count;
+        while (id < end) {
+            long chunkEnd = Math.min(end, ((id >>> CHUNK_BITS) + 1) << CHUNK_BITS);
+            chunk(id, true).markArchived(slot(id), (int) (chunkEnd - id));
+            id = chunkEnd;
+        }
+    }
+
+    public boolean isArchived(long id) {
+        Chunk chunk = chunk(id, false);
+        return chunk != null && chunk.isArchived(slot(id));
+    }
+
+    public int activeChunks() {
+        return (int) chunks.values().stream().filter(c -> c.orders != null).count();
+    }
+
+    public int chunks() {
+        return chunks.size();
+    }
+
+    private Chunk chunk(long id, boolean create) {
+        long key = id >>> CHUNK_BITS;
+        Chunk chunk = chunks.get(key);
+        if (chunk == null && create) {
+            chunk = chunks.computeIfAbsent(key, k -> new Chunk());
+        }
+        return chunk;
+    }
+
+    private static int slot(long id) {
+        return (int) (id & CHUNK_MASK);
+    }
+
+    private static class Chunk {
+        // null once every order of the chunk is archived
+        private volatile AtomicReferenceArray<Order> orders = new AtomicReferenceArray<>(CHUNK_SIZE);
+        private final AtomicLongArray archived = new AtomicLongArray(CHUNK_SIZE / Long.SIZE);
+        private final AtomicInteger created = new AtomicInteger();
+        private final AtomicInteger active = new AtomicInteger();
+
+        void put(int slot, Order order) {
+            orders.set(slot, order);
+            active.incrementAndGet();
+            created.incrementAndGet();
+        }
+
+        Order get(int slot) {
+            AtomicReferenceArray<Order> current = orders;
+            return current == null ? null : current.get(slot);
+        }
+
+        boolean compareAndSet(int slot, Order expected, Order order) {
+            AtomicReferenceArray<Order> current = orders;
+            return current != null && current.compareAndSet(slot, expected, order);
+        }
+
+        void archive(int slot) {
+            AtomicReferenceArray<Order> current = orders;
+            if (current == null || current.get(slot) == null) {
+                return;
+            }
+            // the bit goes first: a reader that sees the empty slot must see the bit too
+            archived.getAndUpdate(slot / Long.SIZE, bits -> bits | 1L << slot);
+            if (current.getAndSet(slot, null) == null) {
+                return;
+            }
+            // ids are never reused, so a full chunk without active orders stays empty
+            if (active.decrementAndGet() == 0 && created.get() == CHUNK_SIZE) {
+                orders = null;
+            }
+        }
+
+        void markArchived(int from, int count) {
+            int end = from + count;
+            for (int slot = from; slot < end; ) {
+                int bits = Math.min(end - slot, Long.SIZE - slot % Long.SIZE);
+                long mask = (bits == Long.SIZE ? -1L : (1L << bits) - 1) << slot;
+                archived.getAndUpdate(slot / Long.SIZE, word -> word | mask);
+                slot += bits;
+            }
+            if (created.addAndGet(count) == CHUNK_SIZE && active.get() == 0) {
+                orders = null;
+            }
+        }
+
+        boolean isArchived(int slot) {
+            return (archived.get(slot / Long.SIZE) & 1L << slot) != 0;
+        }
+    }
+}
@@ -0,0 +1,28 @@
+package course.concurrency.m3_shared.metrics;
+
+import java.util.concurrent.atomic.LongAdder;
+
+class AdderCounter implements Counter {
+
+    private final LongAdder value = new LongAdder();
+
+    @Override
+    public void add(long delta) {
+        value.add(delta);
+    }
+
+    @Override
+    public void increment() {
+        value.increment();
+    }
+
+    @Override
+    public long get() {
+        return value.sum();
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
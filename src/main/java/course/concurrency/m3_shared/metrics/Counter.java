@@ -0,0 +1,34 @@
+package course.concurrency.m3_shared.metrics;
+
+/**
+ * Monotonic count of events.
+ *
+ * writeHeavy() is backed by a LongAdder: concurrent increments go to
+ * different cells, and get() sums the cells. readHeavy() is a single padded
+ * atomic: get() is one volatile read, while concurrent increments contend on
+ * a CAS. Pick by which side is hot, e.g. request counts are write-heavy, while
+ * limits checked on every request are read-heavy.
+ */
+public interface Counter extends Metric<Long> {
+
+    static Counter writeHeavy() {
+        return new AdderCounter();
+    }
+
+    static Counter readHeavy() {
+        return new PaddedCounter();
+    }
+
+    void add(long delta);
+
+    default void increment() {
+        add(1);
+    }
+
+    long get();
+
+    @Override
+    default Long snapshot() {
+        return get();
+    }
+}
@@ -0,0 +1,39 @@
+package course.concurrency.m3_shared.metrics;
+
+/**
+ * Current value of something, e.g. a queue size or the largest batch so far.
+ * Backed by a padded atomic: gauges are read more often than they change.
+ */
+public class Gauge implements Metric<Long> {
+
+    private final PaddedLong value = new PaddedLong(0);
+
+    public void set(long newValue) {
+        value.set(newValue);
+    }
+
+    public void add(long delta) {
+        value.getAndAdd(delta);
+    }
+
+    /**
+     * Sets the value if it is larger than the current one.
+     */
+    public void setMax(long candidate) {
+        value.updateMax(candidate);
+    }
+
+    public long get() {
+        return value.get();
+    }
+
+    @Override
+    public Long snapshot() {
+        return get();
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
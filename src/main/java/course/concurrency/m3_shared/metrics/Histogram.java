@@ -0,0 +1,130 @@
+package course.concurrency.m3_shared.metrics;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Lock-free log-linear histogram of non-negative values, e.g. nanoseconds.
+ *
+ * Every power of two is split into 8 buckets, so a quantile is reported with
+ * at most 12.5% error, while count, sum, min and max are exact. Recording is
+ * a bucket increment, a LongAdder add and min/max checks that only write when
+ * the value is a new min or max.
+ */
+public class Histogram implements Metric<Histogram.Snapshot> {
+
+    private static final int SUB_BITS = 3;
+    private static final int SUB_COUNT = 1 << SUB_BITS;
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_COUNT;
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);
+    private final LongAdder sum = new LongAdder();
+    private final PaddedLong min = new PaddedLong(Long.MAX_VALUE);
+    private final PaddedLong max = new PaddedLong(0);
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.getAndIncrement(index(value));
+        sum.add(value);
+        min.updateMin(value);
+        max.updateMax(value);
+    }
+
+    @Override
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKETS];
+        long count = 0;
+        for (int i = 0; i < BUCKETS; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, sum.sum(), count == 0 ? 0 : min.get(), max.get());
+    }
+
+    static int index(long value) {
+        int msb = 63 - Long.numberOfLeadingZeros(value | 1);
+        if (msb < SUB_BITS) {
+            return (int) value;
+        }
+        int shift = msb - SUB_BITS;
+        return (shift + 1) * SUB_COUNT + (int) ((value >>> shift) & (SUB_COUNT - 1));
+    }
+
+    // largest value that falls into the bucket
+    static long upperBound(int index) {
+        if (index < SUB_COUNT) {
+            return index;
+        }
+        int shift = index / SUB_COUNT - 1;
+        long lower = (long) (SUB_COUNT + index % SUB_COUNT) << shift;
+        return lower + (1L << shift) - 1;
+    }
+
+    @Override
+    public String toString() {
+        return snapshot().toString();
+    }
+
+    public static class Snapshot {
+        private final long[] counts;
+        private final long count;
+        private final long sum;
+        private final long min;
+        private final long max;
+
+        private Snapshot(long[] counts, long count, long sum, long min, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.sum = sum;
+            this.min = min;
+            this.max = max;
+        }
+
+        public long getCount() {
+            return count;
+        }
+
+        public long getSum() {
+            return sum;
+        }
+
+        public double getMean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        /**
+         * 0 if nothing was recorded.
+         */
+        public long getMin() {
+            return min;
+        }
+
+        public long getMax() {
+            return max;
+        }
+
+        /**
+         * @param quantile from 0 to 1, e.g. 0.99
+         * @return upper bound of the bucket holding the quantile, within min and max
+         */
+        public long getValueAt(double quantile) {
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.max(min, Math.min(upperBound(i), max));
+                }
+            }
+            return max;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("count=%d,mean=%.0f,min=%d,p50=%d,p99=%d,max=%d",
+                    count, getMean(), min, getValueAt(0.5), getValueAt(0.99), max);
+        }
+    }
+}
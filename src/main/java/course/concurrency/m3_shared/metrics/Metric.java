@@ -0,0 +1,12 @@
+package course.concurrency.m3_shared.metrics;
+
+/**
+ * Value updated by many threads and read as an immutable snapshot.
+ *
+ * Snapshots are taken without stopping writers, so a snapshot contains every
+ * update that finished before it started and any subset of the concurrent ones.
+ */
+public interface Metric<S> {
+
+    S snapshot();
+}
@@ -0,0 +1,108 @@
+package course.concurrency.m3_shared.metrics;
+
+import java.util.Collections;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Named metrics, created on first use. Looking up an existing metric is
+ * a plain map read, so callers may look metrics up on every update instead
+ * of keeping references.
+ */
+public class Metrics {
+
+    private final ConcurrentHashMap<String, Metric<?>> metrics = new ConcurrentHashMap<>();
+
+    /**
+     * Write-heavy counter, see Counter.writeHeavy().
+     */
+    public Counter counter(String name) {
+        return get(name, Counter.class, Counter::writeHeavy);
+    }
+
+    public Counter readHeavyCounter(String name) {
+        return get(name, Counter.class, Counter::readHeavy);
+    }
+
+    public Gauge gauge(String name) {
+        return get(name, Gauge.class, Gauge::new);
+    }
+
+    public Histogram histogram(String name) {
+        return get(name, Histogram.class, Histogram::new);
+    }
+
+    private <M extends Metric<?>> M get(String name, Class<M> type, Supplier<M> factory) {
+        // plain get first: computeIfAbsent may lock the bin even if the key exists
+        Metric<?> metric = metrics.get(name);
+        if (metric == null) {
+            metric = metrics.computeIfAbsent(name, k -> factory.get());
+        }
+        if (!type.isInstance(metric)) {
+            throw new IllegalArgumentException(name + " is a " + metric.getClass().getSimpleName()
+                    + ", not a " + type.getSimpleName());
+        }
+        return type.cast(metric);
+    }
+
+    /**
+     * Each metric is read at its own moment while updates go on, see Metric.
+     */
+    public Snapshot snapshot() {
+        Map<String, Long> counters = new TreeMap<>();
+        Map<String, Long> gauges = new TreeMap<>();
+        Map<String, Histogram.Snapshot> histograms = new TreeMap<>();
+        metrics.forEach((name, metric) -> {
+            if (metric instanceof Counter) {
+                counters.put(name, ((Counter) metric).snapshot());
+            } else if (metric instanceof Gauge) {
+                gauges.put(name, ((Gauge) metric).snapshot());
+            } else if (metric instanceof Histogram) {
+                histograms.put(name, ((Histogram) metric).snapshot());
+            }
+        });
+        return new Snapshot(counters, gauges, histograms);
+    }
+
+    public static class Snapshot {
+        private final Map<String, Long> counters;
+        private final Map<String, Long> gauges;
+        private final Map<String, Histogram.Snapshot> histograms;
+
+        private Snapshot(Map<String, Long> counters, Map<String, Long> gauges,
+                         Map<String, Histogram.Snapshot> histograms) {
+            this.counters = Collections.unmodifiableMap(counters);
+            this.gauges = Collections.unmodifiableMap(gauges);
+            this.histograms = Collections.unmodifiableMap(histograms);
+        }
+
+        /**
+         * @return counters by name, sorted
+         */
+        public Map<String, Long> getCounters() {
+            return counters;
+        }
+
+        public Map<String, Long> getGauges() {
+            return gauges;
+        }
+
+        public Map<String, Histogram.Snapshot> getHistograms() {
+            return histograms;
+        }
+
+        /**
+         * 0 for a counter that doesn't exist.
+         */
+        public long getCounter(String name) {
+            return counters.getOrDefault(name, 0L);
+        }
+
+        @Override
+        public String toString() {
+            return "counters=" + counters + ",gauges=" + gauges + ",histograms=" + histograms;
+        }
+    }
+}
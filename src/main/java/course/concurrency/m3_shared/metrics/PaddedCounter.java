@@ -0,0 +1,21 @@
+package course.concurrency.m3_shared.metrics;
+
+class PaddedCounter implements Counter {
+
+    private final PaddedLong value = new PaddedLong(0);
+
+    @Override
+    public void add(long delta) {
+        value.getAndAdd(delta);
+    }
+
+    @Override
+    public long get() {
+        return value.get();
+    }
+
+    @Override
+    public String toString() {
+        return Long.toString(get());
+    }
+}
@@ -0,0 +1,65 @@
+package course.concurrency.m3_shared.metrics;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/*
+ * Volatile long alone on its cache line, so writes to it don't slow down
+ * reads of neighbouring objects and the other way round. HotSpot may reorder
+ * the fields of a class but keeps superclass fields first, so the padding
+ * comes from the class hierarchy.
+ *
+ * 15 longs on each side keep anything else at least 128 bytes away: the
+ * adjacent line prefetcher pulls 64-byte lines in pairs, so two values 64
+ * bytes apart still contend. CounterBenchmarks pads its cells the same way.
+ */
+abstract class PaddedLongHead {
+    long p01, p02, p03, p04, p05, p06, p07, p08, p09, p10, p11, p12, p13, p14, p15;
+}
+
+abstract class PaddedLongValue extends PaddedLongHead {
+    volatile long value;
+}
+
+final class PaddedLong extends PaddedLongValue {
+    long p21, p22, p23, p24, p25, p26, p27, p28, p29, p30, p31, p32, p33, p34, p35;
+
+    private static final VarHandle VALUE;
+
+    static {
+        try {
+            VALUE = MethodHandles.lookup().findVarHandle(PaddedLongValue.class, "value", long.class);
+        } catch (ReflectiveOperationException e) {
+            throw new ExceptionInInitializerError(e);
+        }
+    }
+
+    PaddedLong(long initial) {
+        value = initial;
+    }
+
+    long get() {
+        return value;
+    }
+
+    void set(long newValue) {
+        value = newValue;
+    }
+
+    long getAndAdd(long delta) {
+        return (long) VALUE.getAndAdd(this, delta);
+    }
+
+    // reads first, so a value that doesn't change the max doesn't write
+    void updateMax(long candidate) {
+        long current;
+        while (candidate > (current = value) && !VALUE.compareAndSet(this, current, candidate)) {
+        }
+    }
+
+    void updateMin(long candidate) {
+        long current;
+        while (candidate < (current = value) && !VALUE.compareAndSet(this, current, candidate)) {
+        }
+    }
+}
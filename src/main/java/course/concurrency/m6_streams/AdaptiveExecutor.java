@@ -0,0 +1,142 @@
+package course.concurrency.m6_streams;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Pool that sizes itself by the measured wait/compute ratio of its tasks:
+ * threads = cpus * targetUtilization * (1 + wait / compute).
+ *
+ * Wait is the wall time of a task minus its CPU time, so it includes waiting
+ * for a CPU when the pool has more runnable threads than CPUs. With a backlog
+ * the formula then reduces to size * targetUtilization / measured utilization,
+ * which is why the target is a bit below 1: a CPU-bound pool shrinks to the
+ * CPU count instead of staying at any size that keeps the CPUs busy. The
+ * formula alone would go on to cpus * targetUtilization, so the target never
+ * goes below the CPU count.
+ *
+ * Every interval the pool moves half way to the target, within [min, max].
+ * Without thread CPU time (the JVM doesn't support it or it is disabled)
+ * tasks aren't measured and the pool keeps its size.
+ */
+public class AdaptiveExecutor extends ThreadPoolExecutor {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+
+    private final int cpus = Runtime.getRuntime().availableProcessors();
+    private final int minThreads;
+    private final int maxThreads;
+    private final double targetUtilization;
+    private final long intervalNanos;
+
+    // wall and cpu time at the start of the current task
+    private final ThreadLocal<long[]> started = ThreadLocal.withInitial(() -> new long[2]);
+    private final LongAdder waitNanos = new LongAdder();
+    private final LongAdder cpuNanos = new LongAdder();
+    private final AtomicLong intervalStart = new AtomicLong(System.nanoTime());
+
+    private volatile double lastRatio;
+    private volatile int lastTarget;
+
+    public AdaptiveExecutor(int minThreads, int maxThreads, Duration interval) {
+        this(minThreads, maxThreads, 0.9, interval);
+    }
+
+    public AdaptiveExecutor(int minThreads, int maxThreads, double targetUtilization, Duration interval) {
+        super(minThreads, minThreads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+        this.minThreads = minThreads;
+        this.maxThreads = maxThreads;
+        this.targetUtilization = targetUtilization;
+        this.intervalNanos = interval.toNanos();
+        this.lastTarget = minThreads;
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        long[] times = started.get();
+        times[0] = System.nanoTime();
+        times[1] = THREADS.getCurrentThreadCpuTime();
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        long[] times = started.get();
+        long now = System.nanoTime();
+        long cpuEnd = THREADS.getCurrentThreadCpuTime();
+        // -1 when thread CPU time isn't available
+        record(now - times[0], times[1] < 0 || cpuEnd < 0 ? -1 : cpuEnd - times[1]);
+
+        long start = intervalStart.get();
+        if (now - start >= intervalNanos && intervalStart.compareAndSet(start, now)) {
+            adjust();
+        }
+    }
+
+    /**
+     * @param cpu CPU time of the task, negative if unknown
+     */
+    void record(long wall, long cpu) {
+        if (cpu < 0) {
+            return;
+        }
+        cpuNanos.add(cpu);
+        waitNanos.add(Math.max(0, wall - cpu));
+    }
+
+    // called every interval, package-private for tests
+    void adjust() {
+        long wait = waitNanos.sumThenReset();
+        long cpu = cpuNanos.sumThenReset();
+        if (cpu == 0) {
+            if (wait > 0) {
+                // only blocking tasks: as large as allowed
+                lastRatio = Double.POSITIVE_INFINITY;
+                resize(maxThreads);
+            }
+            // else nothing measured
+            return;
+        }
+        double ratio = (double) wait / cpu;
+        lastRatio = ratio;
+        resize(Math.max(cpus, cpus * targetUtilization * (1 + ratio)));
+    }
+
+    private synchronized void resize(double target) {
+        int bounded = (int) Math.round(Math.max(minThreads, Math.min(maxThreads, target)));
+        lastTarget = bounded;
+        int current = getCorePoolSize();
+        // damping: half the distance, at least one thread
+        int delta = bounded - current;
+        int next = current + (Math.abs(delta) <= 1 ? delta : delta / 2);
+        if (next > current) {
+            setMaximumPoolSize(next);
+            setCorePoolSize(next);
+        } else if (next < current) {
+            setCorePoolSize(next);
+            setMaximumPoolSize(next);
+        }
+    }
+
+    /**
+     * Wait/compute ratio measured in the last interval.
+     */
+    public double getWaitRatio() {
+        return lastRatio;
+    }
+
+    public int getTargetPoolSize() {
+        return lastTarget;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("size=%d,target=%d,ratio=%.2f,queue=%d",
+                getCorePoolSize(), getTargetPoolSize(), getWaitRatio(), getQueue().size());
+    }
+}
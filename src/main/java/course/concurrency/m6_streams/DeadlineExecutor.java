@@ -0,0 +1,414 @@
+package course.concurrency.m6_streams;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.Future;
+import java.util.concurrent.RunnableFuture;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.Condition;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Fixed pool that runs higher priority classes first and, within a class,
+ * the task with the earliest deadline first.
+ *
+ * Aging: a task that waited longer than the aging time may go ahead of higher
+ * classes, once per aging time. A steady stream of interactive work slows
+ * batch work down to one task per aging time but never stops it, while a batch
+ * backlog, which is always older than the aging time, can't take over the pool.
+ * A task whose deadline passed while queued is skipped, and cancelled if it
+ * is a Future.
+ */
+public class DeadlineExecutor extends ThreadPoolExecutor {
+
+    public enum Priority { INTERACTIVE, NORMAL, BATCH }
+
+    private static final long NO_DEADLINE = Long.MAX_VALUE;
+
+    private final AtomicLong sequence = new AtomicLong();
+
+    private final LongAdder[] started = counters();
+    private final LongAdder[] expired = counters();
+    private final LongAdder[] aged = counters();
+
+    public DeadlineExecutor(int threads, Duration aging) {
+        this(threads, new ClassQueue(aging.toNanos()));
+    }
+
+    private DeadlineExecutor(int threads, ClassQueue queue) {
+        super(threads, threads, 0, TimeUnit.MILLISECONDS, queue);
+        queue.executor = this;
+    }
+
+    /**
+     * NORMAL priority without deadline.
+     */
+    @Override
+    public void execute(Runnable command) {
+        execute(command, Priority.NORMAL, null);
+    }
+
+    /**
+     * @param deadline time the task may wait before starting, null for no deadline
+     */
+    public void execute(Runnable command, Priority priority, Duration deadline) {
+        long now = System.nanoTime();
+        super.execute(new Scheduled(command, priority, now,
+                deadline == null ? NO_DEADLINE : now + deadline.toNanos(), sequence.getAndIncrement()));
+    }
+
+    /**
+     * @return future cancelled if the deadline passes before the task starts
+     */
+    public <T> Future<T> submit(Callable<T> task, Priority priority, Duration deadline) {
+        RunnableFuture<T> future = newTaskFor(task);
+        execute(future, priority, deadline);
+        return future;
+    }
+
+    /**
+     * @return tasks as they were passed to execute()
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> queued = super.shutdownNow();
+        queued.replaceAll(r -> ((Scheduled) r).task);
+        return queued;
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        for (Runnable r : getQueue()) {
+            if (((Scheduled) r).task == task) {
+                return super.remove(r);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        started[((Scheduled) r).priority.ordinal()].increment();
+    }
+
+    public long getStartedCount(Priority priority) {
+        return started[priority.ordinal()].sum();
+    }
+
+    public long getExpiredCount(Priority priority) {
+        return expired[priority.ordinal()].sum();
+    }
+
+    /**
+     * Tasks that went ahead of a higher class because they waited too long.
+     */
+    public long getAgedCount(Priority priority) {
+        return aged[priority.ordinal()].sum();
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder("queue=").append(getQueue().size());
+        for (Priority priority : Priority.values()) {
+            String name = priority.name().toLowerCase();
+            result.append(',').append(name).append("Started=").append(getStartedCount(priority))
+                    .append(',').append(name).append("Expired=").append(getExpiredCount(priority))
+                    .append(',').append(name).append("Aged=").append(getAgedCount(priority));
+        }
+        return result.toString();
+    }
+
+    private static LongAdder[] counters() {
+        LongAdder[] counters = new LongAdder[Priority.values().length];
+        Arrays.setAll(counters, i -> new LongAdder());
+        return counters;
+    }
+
+    private static class Scheduled implements Runnable {
+        private final Runnable task;
+        private final Priority priority;
+        private final long enqueuedNanos;
+        private final long deadlineNanos;
+        private final long sequence;
+
+        Scheduled(Runnable task, Priority priority, long enqueuedNanos, long deadlineNanos, long sequence) {
+            this.task = task;
+            this.priority = priority;
+            this.enqueuedNanos = enqueuedNanos;
+            this.deadlineNanos = deadlineNanos;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    // earliest deadline first, submission order for equal deadlines
+    private static final Comparator<Scheduled> EDF = (a, b) -> {
+        // subtraction keeps the order right when nanoTime overflows
+        int byDeadline = a.deadlineNanos == b.deadlineNanos ? 0
+                : a.deadlineNanos == NO_DEADLINE ? 1
+                : b.deadlineNanos == NO_DEADLINE ? -1
+                : Long.signum(a.deadlineNanos - b.deadlineNanos);
+        return byDeadline != 0 ? byDeadline : Long.compare(a.sequence, b.sequence);
+    };
+
+    /*
+     * One EDF heap per priority class under a single lock. The choice between
+     * classes depends on the time, so it's made at take time rather than by
+     * a static order in one heap.
+     */
+    private static class ClassQueue extends AbstractQueue<Runnable> implements BlockingQueue<Runnable> {
+
+        private final long agingNanos;
+        private long lastAgedNanos;
+        private final List<PriorityQueue<Scheduled>> classes = new ArrayList<>();
+        private final ReentrantLock lock = new ReentrantLock();
+        private final Condition notEmpty = lock.newCondition();
+        private int size;
+
+        private DeadlineExecutor executor;
+
+        ClassQueue(long agingNanos) {
+            this.agingNanos = agingNanos;
+            this.lastAgedNanos = System.nanoTime() - agingNanos;
+            for (int i = 0; i < Priority.values().length; i++) {
+                classes.add(new PriorityQueue<>(EDF));
+            }
+        }
+
+        @Override
+        public boolean offer(Runnable r) {
+            Scheduled task = (Scheduled) r;
+            lock.lock();
+            try {
+                classes.get(task.priority.ordinal()).add(task);
+                size++;
+                notEmpty.signal();
+                return true;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public void put(Runnable r) {
+            offer(r);
+        }
+
+        @Override
+        public boolean offer(Runnable r, long timeout, TimeUnit unit) {
+            return offer(r);
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            lock.lockInterruptibly();
+            try {
+                Runnable r;
+                while ((r = next()) == null) {
+                    if (executor.isShutdown()) {
+                        // only expired tasks were left, the worker rechecks the pool instead of waiting
+                        return null;
+                    }
+                    notEmpty.await();
+                }
+                return r;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long nanos = unit.toNanos(timeout);
+            lock.lockInterruptibly();
+            try {
+                Runnable r;
+                while ((r = next()) == null) {
+                    if (nanos <= 0) {
+                        return null;
+                    }
+                    nanos = notEmpty.awaitNanos(nanos);
+                }
+                return r;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public Runnable poll() {
+            lock.lock();
+            try {
+                return next();
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // called under the lock
+        private Scheduled next() {
+            long now = System.nanoTime();
+            Scheduled chosen = choose(now);
+            if (chosen != null) {
+                PriorityQueue<Scheduled> queue = classes.get(chosen.priority.ordinal());
+                boolean aged = !isFirstClass(queue);
+                queue.poll();
+                size--;
+                if (aged) {
+                    lastAgedNanos = now;
+                    executor.aged[chosen.priority.ordinal()].increment();
+                }
+            }
+            return chosen;
+        }
+
+        private boolean isFirstClass(PriorityQueue<Scheduled> queue) {
+            for (PriorityQueue<Scheduled> higher : classes) {
+                if (!higher.isEmpty()) {
+                    return higher == queue;
+                }
+            }
+            return false;
+        }
+
+        // called under the lock, the task next() takes, skipping expired ones
+        private Scheduled choose(long now) {
+            Scheduled first = null;
+            Scheduled oldest = null;
+            for (PriorityQueue<Scheduled> queue : classes) {
+                Scheduled head = skipExpired(queue, now);
+                if (head == null) {
+                    continue;
+                }
+                if (first == null) {
+                    first = head;
+                } else if (now - head.enqueuedNanos >= agingNanos && now - lastAgedNanos >= agingNanos
+                        && (oldest == null || head.enqueuedNanos - oldest.enqueuedNanos < 0)) {
+                    oldest = head;
+                }
+            }
+            return oldest != null && oldest.enqueuedNanos - first.enqueuedNanos < 0 ? oldest : first;
+        }
+
+        // EDF keeps every expired task of a class at the head
+        private Scheduled skipExpired(PriorityQueue<Scheduled> queue, long now) {
+            Scheduled head;
+            while ((head = queue.peek()) != null
+                    && head.deadlineNanos != NO_DEADLINE && now - head.deadlineNanos > 0) {
+                queue.poll();
+                size--;
+                executor.expired[head.priority.ordinal()].increment();
+                if (head.task instanceof Future) {
+                    ((Future<?>) head.task).cancel(false);
+                }
+            }
+            return head;
+        }
+
+        @Override
+        public Runnable peek() {
+            lock.lock();
+            try {
+                return choose(System.nanoTime());
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int size() {
+            lock.lock();
+            try {
+                return size;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int remainingCapacity() {
+            return Integer.MAX_VALUE;
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            lock.lock();
+            try {
+                for (PriorityQueue<Scheduled> queue : classes) {
+                    if (queue.remove(o)) {
+                        size--;
+                        return true;
+                    }
+                }
+                return false;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c) {
+            return drainTo(c, Integer.MAX_VALUE);
+        }
+
+        @Override
+        public int drainTo(Collection<? super Runnable> c, int maxElements) {
+            lock.lock();
+            try {
+                int drained = 0;
+                for (PriorityQueue<Scheduled> queue : classes) {
+                    while (drained < maxElements && !queue.isEmpty()) {
+                        c.add(queue.poll());
+                        size--;
+                        drained++;
+                    }
+                }
+                return drained;
+            } finally {
+                lock.unlock();
+            }
+        }
+
+        // iterates a snapshot, remove() removes from the queue
+        @Override
+        public Iterator<Runnable> iterator() {
+            List<Runnable> snapshot = new ArrayList<>();
+            lock.lock();
+            try {
+                for (PriorityQueue<Scheduled> queue : classes) {
+                    snapshot.addAll(queue);
+                }
+            } finally {
+                lock.unlock();
+            }
+            Iterator<Runnable> iterator = snapshot.iterator();
+            return new Iterator<>() {
+                private Runnable last;
+
+                @Override
+                public boolean hasNext() {
+                    return iterator.hasNext();
+                }
+
+                @Override
+                public Runnable next() {
+                    return last = iterator.next();
+                }
+
+                @Override
+                public void remove() {
+                    ClassQueue.this.remove(last);
+                }
+            };
+        }
+    }
+}
@@ -0,0 +1,170 @@
+package course.concurrency.m6_streams;
+
+import course.concurrency.m3_shared.metrics.Histogram;
+
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * ThreadPoolExecutor that reports how long tasks wait in the queue separately
+ * from how long they run. A saturated pool shows growing queue time with flat
+ * execution time, a slow dependency shows the opposite.
+ *
+ * Costs per task: one small wrapper object, two nanoTime calls and
+ * two histogram records.
+ */
+public class InstrumentedExecutor extends ThreadPoolExecutor {
+
+    private final Histogram queueTime = new Histogram();
+    private final Histogram executionTime = new Histogram();
+    private final LongAdder failed = new LongAdder();
+    private final LongAdder rejected = new LongAdder();
+
+    public InstrumentedExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                BlockingQueue<Runnable> workQueue) {
+        this(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, new AbortPolicy());
+    }
+
+    public InstrumentedExecutor(int corePoolSize, int maximumPoolSize, long keepAliveTime, TimeUnit unit,
+                                BlockingQueue<Runnable> workQueue, RejectedExecutionHandler handler) {
+        super(corePoolSize, maximumPoolSize, keepAliveTime, unit, workQueue, new Counting(handler));
+    }
+
+    public static InstrumentedExecutor fixed(int threads) {
+        return new InstrumentedExecutor(threads, threads, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>());
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        super.execute(new Timed(command, System.nanoTime()));
+    }
+
+    /**
+     * @return tasks as they were passed to execute()
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> queued = super.shutdownNow();
+        queued.replaceAll(r -> ((Timed) r).task);
+        return queued;
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        for (Runnable r : getQueue()) {
+            if (((Timed) r).task == task) {
+                return super.remove(r);
+            }
+        }
+        return false;
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        Timed task = (Timed) r;
+        task.startedNanos = System.nanoTime();
+        queueTime.record(task.startedNanos - task.enqueuedNanos);
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        executionTime.record(System.nanoTime() - ((Timed) r).startedNanos);
+        if (t != null || ((Timed) r).failed()) {
+            failed.increment();
+        }
+    }
+
+    public Stats snapshot() {
+        return new Stats(queueTime.snapshot(), executionTime.snapshot(), failed.sum(), rejected.sum());
+    }
+
+    public static class Stats {
+        private final Histogram.Snapshot queueTime;
+        private final Histogram.Snapshot executionTime;
+        private final long failed;
+        private final long rejected;
+
+        Stats(Histogram.Snapshot queueTime, Histogram.Snapshot executionTime,
+              long failed, long rejected) {
+            this.queueTime = queueTime;
+            this.executionTime = executionTime;
+            this.failed = failed;
+            this.rejected = rejected;
+        }
+
+        /**
+         * Nanoseconds from execute() to the start of the task.
+         */
+        public Histogram.Snapshot getQueueTime() {
+            return queueTime;
+        }
+
+        /**
+         * Nanoseconds the task ran.
+         */
+        public Histogram.Snapshot getExecutionTime() {
+            return executionTime;
+        }
+
+        public long getFailed() {
+            return failed;
+        }
+
+        public long getRejected() {
+            return rejected;
+        }
+
+        @Override
+        public String toString() {
+            return "queueTime[" + queueTime + "],executionTime[" + executionTime
+                    + "],failed=" + failed + ",rejected=" + rejected;
+        }
+    }
+
+    private static class Timed implements Runnable {
+        private final Runnable task;
+        private final long enqueuedNanos;
+        private long startedNanos;
+
+        Timed(Runnable task, long enqueuedNanos) {
+            this.task = task;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+
+        // submit() wraps the task in a FutureTask, which keeps the exception
+        boolean failed() {
+            if (!(task instanceof Future) || !((Future<?>) task).isDone()) {
+                return false;
+            }
+            try {
+                ((Future<?>) task).get();
+                return false;
+            } catch (CancellationException | ExecutionException e) {
+                return true;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return false;
+            }
+        }
+    }
+
+    private static class Counting implements RejectedExecutionHandler {
+        private final RejectedExecutionHandler delegate;
+
+        Counting(RejectedExecutionHandler delegate) {
+            this.delegate = delegate;
+        }
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor executor) {
+            ((InstrumentedExecutor) executor).rejected.increment();
+            delegate.rejectedExecution(((Timed) r).task, executor);
+        }
+    }
+}
@@ -0,0 +1,202 @@
+package course.concurrency.m6_streams;
+
+import course.concurrency.m3_shared.metrics.Histogram;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingDeque;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Runs the newest queued task first. Under overload the newest requests are
+ * still served fast and the old ones, whose callers have likely given up,
+ * wait or are dropped:
+ * - a task that waited longer than maxQueueTime is never started,
+ * - a full queue drops its oldest task instead of rejecting the new one.
+ * Expired and dropped tasks from submit() are cancelled.
+ */
+public class LifoExecutor extends ThreadPoolExecutor {
+
+    private final long maxQueueNanos;
+
+    private final LongAdder submitted = new LongAdder();
+    private final LongAdder started = new LongAdder();
+    private final LongAdder expired = new LongAdder();
+    private final LongAdder dropped = new LongAdder();
+    private final Histogram waitTime = new Histogram();
+
+    /**
+     * @param maxQueueTime zero to never expire queued tasks
+     */
+    public LifoExecutor(int threads, int queueCapacity, Duration maxQueueTime) {
+        this(threads, new LifoDeque(queueCapacity), maxQueueTime);
+    }
+
+    private LifoExecutor(int threads, LifoDeque queue, Duration maxQueueTime) {
+        super(threads, threads, 0, TimeUnit.MILLISECONDS, queue);
+        this.maxQueueNanos = maxQueueTime.toNanos();
+        queue.executor = this;
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submitted.increment();
+        super.execute(new Queued(command, System.nanoTime()));
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        started.increment();
+        waitTime.record(System.nanoTime() - ((Queued) r).enqueuedNanos);
+    }
+
+    private boolean isExpired(Runnable r, long now) {
+        return maxQueueNanos > 0 && now - ((Queued) r).enqueuedNanos > maxQueueNanos;
+    }
+
+    // a future that is never run would make its caller wait forever
+    private static void discard(Runnable r, LongAdder counter) {
+        counter.increment();
+        Runnable task = ((Queued) r).task;
+        if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+        }
+    }
+
+    /**
+     * @return tasks as they were passed to execute()
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> queued = super.shutdownNow();
+        queued.replaceAll(r -> ((Queued) r).task);
+        return queued;
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        for (Runnable r : getQueue()) {
+            if (((Queued) r).task == task) {
+                return super.remove(r);
+            }
+        }
+        return false;
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    public long getStartedCount() {
+        return started.sum();
+    }
+
+    public long getExpiredCount() {
+        return expired.sum();
+    }
+
+    public long getDroppedCount() {
+        return dropped.sum();
+    }
+
+    /**
+     * Nanoseconds from execute() to the start of the started tasks.
+     */
+    public Histogram.Snapshot getWaitTime() {
+        return waitTime.snapshot();
+    }
+
+    public double getAverageWaitMillis() {
+        return waitTime.snapshot().getMean() / 1_000_000.0;
+    }
+
+    public double getMaxWaitMillis() {
+        return waitTime.snapshot().getMax() / 1_000_000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("queue=%d,submitted=%d,started=%d,expired=%d,dropped=%d,avgWaitMs=%.2f,maxWaitMs=%.2f",
+                getQueue().size(), getSubmittedCount(), getStartedCount(), getExpiredCount(), getDroppedCount(),
+                getAverageWaitMillis(), getMaxWaitMillis());
+    }
+
+    private static class Queued implements Runnable {
+        private final Runnable task;
+        private final long enqueuedNanos;
+
+        Queued(Runnable task, long enqueuedNanos) {
+            this.task = task;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        @Override
+        public void run() {
+            task.run();
+        }
+    }
+
+    /*
+     * Newest tasks at the head, where workers take from. Expired tasks are
+     * skipped by workers and trimmed from the tail on every offer, so they
+     * don't hold capacity until a worker gets to them.
+     */
+    private static class LifoDeque extends LinkedBlockingDeque<Runnable> {
+
+        private static final long serialVersionUID = 1L;
+
+        private transient LifoExecutor executor;
+
+        LifoDeque(int capacity) {
+            super(capacity);
+        }
+
+        @Override
+        public boolean offer(Runnable r) {
+            long now = System.nanoTime();
+            Runnable oldest;
+            while ((oldest = peekLast()) != null && executor.isExpired(oldest, now)) {
+                if (removeLastOccurrence(oldest)) {
+                    discard(oldest, executor.expired);
+                }
+            }
+            while (!offerFirst(r)) {
+                Runnable dropped = pollLast();
+                if (dropped != null) {
+                    discard(dropped, executor.dropped);
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public Runnable take() throws InterruptedException {
+            while (true) {
+                Runnable r = super.takeFirst();
+                if (!executor.isExpired(r, System.nanoTime())) {
+                    return r;
+                }
+                discard(r, executor.expired);
+                if (executor.isShutdown()) {
+                    // no task, the worker rechecks the pool instead of waiting for work that never comes
+                    return null;
+                }
+            }
+        }
+
+        @Override
+        public Runnable poll(long timeout, TimeUnit unit) throws InterruptedException {
+            long deadline = System.nanoTime() + unit.toNanos(timeout);
+            while (true) {
+                Runnable r = super.pollFirst(deadline - System.nanoTime(), TimeUnit.NANOSECONDS);
+                if (r == null || !executor.isExpired(r, System.nanoTime())) {
+                    return r;
+                }
+                discard(r, executor.expired);
+            }
+        }
+    }
+}
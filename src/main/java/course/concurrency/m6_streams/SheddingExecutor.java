@@ -0,0 +1,279 @@
+package course.concurrency.m6_streams;
+
+import java.time.Duration;
+import java.util.EnumMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Fixed pool with no or bounded queue that sheds load instead of queueing it.
+ *
+ * Policies for a task that finds all threads busy and the queue full:
+ * - DISCARD drops it,
+ * - DISCARD_OLDEST drops the oldest queued task and retries,
+ * - CALLER_RUNS runs it in the submitting thread, at most callerRunsLimit
+ *   at once, and drops it above that,
+ * - DEADLINE drops it, and also rejects up front a task that would wait
+ *   longer than maxQueueTime and skips queued tasks that did.
+ *
+ * Adaptive admission (off by default) works like CoDel: if even the shortest
+ * queue wait during an interval is above the target, the queue is standing
+ * rather than absorbing a burst, so the number of tasks admitted to the queue
+ * is halved. Otherwise it grows back slowly. Without a queue there is nothing
+ * to stand, so it has no effect then.
+ *
+ * Dropped tasks are counted, and the ones from submit() are cancelled, so
+ * their futures don't wait forever.
+ */
+public class SheddingExecutor extends ThreadPoolExecutor {
+
+    public enum Policy { DISCARD, DISCARD_OLDEST, CALLER_RUNS, DEADLINE }
+
+    public enum Rejection { DISCARDED, DISCARDED_OLDEST, CALLER_RAN, CALLER_LIMIT, DEADLINE, EXPIRED, ADMISSION }
+
+    private final Policy policy;
+    private final int queueCapacity;
+
+    private volatile int callerRunsLimit;
+    private final AtomicInteger callerRunning = new AtomicInteger();
+
+    private volatile long maxQueueNanos;
+    // smoothed task execution time, for the wait estimate
+    private volatile long serviceNanos;
+
+    private volatile long targetNanos;
+    private volatile long intervalNanos;
+    private volatile int admissionLimit;
+    private final AtomicLong intervalStart = new AtomicLong(System.nanoTime());
+    private final AtomicLong minWaitNanos = new AtomicLong(Long.MAX_VALUE);
+
+    private final LongAdder submitted = new LongAdder();
+    private final Map<Rejection, LongAdder> rejections = new EnumMap<>(Rejection.class);
+
+    /**
+     * @param queueCapacity zero to hand tasks only to idle threads
+     */
+    public SheddingExecutor(int threads, int queueCapacity, Policy policy) {
+        super(threads, threads, 0, TimeUnit.MILLISECONDS,
+                queueCapacity == 0 ? new SynchronousQueue<>() : new ArrayBlockingQueue<>(queueCapacity),
+                new Shedding());
+        this.policy = policy;
+        this.queueCapacity = queueCapacity;
+        this.callerRunsLimit = threads;
+        this.maxQueueNanos = TimeUnit.MILLISECONDS.toNanos(100);
+        this.admissionLimit = queueCapacity;
+        for (Rejection rejection : Rejection.values()) {
+            rejections.put(rejection, new LongAdder());
+        }
+    }
+
+    public void setCallerRunsLimit(int callerRunsLimit) {
+        this.callerRunsLimit = callerRunsLimit;
+    }
+
+    public void setMaxQueueTime(Duration maxQueueTime) {
+        this.maxQueueNanos = maxQueueTime.toNanos();
+    }
+
+    /**
+     * Turns adaptive admission on, CoDel uses 5ms target and 100ms interval.
+     */
+    public void setAdaptiveAdmission(Duration target, Duration interval) {
+        this.intervalNanos = interval.toNanos();
+        this.targetNanos = target.toNanos();
+    }
+
+    @Override
+    public void execute(Runnable command) {
+        submitted.increment();
+        Queued task = new Queued(command, System.nanoTime());
+        if (targetNanos > 0 && queueCapacity > 0 && getQueue().size() >= admissionLimit) {
+            drop(command, Rejection.ADMISSION);
+            return;
+        }
+        if (policy == Policy.DEADLINE && estimatedWaitNanos() > maxQueueNanos) {
+            drop(command, Rejection.DEADLINE);
+            return;
+        }
+        super.execute(task);
+    }
+
+    /**
+     * @return tasks as they were passed to execute()
+     */
+    @Override
+    public List<Runnable> shutdownNow() {
+        List<Runnable> queued = super.shutdownNow();
+        queued.replaceAll(r -> ((Queued) r).task);
+        return queued;
+    }
+
+    @Override
+    public boolean remove(Runnable task) {
+        for (Runnable r : getQueue()) {
+            if (((Queued) r).task == task) {
+                return super.remove(r);
+            }
+        }
+        return false;
+    }
+
+    // every queued task and this one are served in turn by all threads
+    private long estimatedWaitNanos() {
+        int queued = getQueue().size();
+        return queued == 0 ? 0 : (queued + 1) * serviceNanos / getMaximumPoolSize();
+    }
+
+    @Override
+    protected void beforeExecute(Thread t, Runnable r) {
+        Queued task = (Queued) r;
+        task.startedNanos = System.nanoTime();
+        if (targetNanos > 0 && queueCapacity > 0) {
+            control(task.startedNanos - task.enqueuedNanos, task.startedNanos);
+        }
+    }
+
+    @Override
+    protected void afterExecute(Runnable r, Throwable t) {
+        Queued task = (Queued) r;
+        if (task.ran) {
+            long elapsed = System.nanoTime() - task.startedNanos;
+            long current = serviceNanos;
+            // racy update is fine for a moving average
+            serviceNanos = current == 0 ? elapsed : current + (elapsed - current) / 8;
+        }
+    }
+
+    private void control(long wait, long now) {
+        minWaitNanos.accumulateAndGet(wait, Math::min);
+        long start = intervalStart.get();
+        if (now - start < intervalNanos || !intervalStart.compareAndSet(start, now)) {
+            return;
+        }
+        long min = minWaitNanos.getAndSet(Long.MAX_VALUE);
+        int limit = admissionLimit;
+        if (min > targetNanos) {
+            admissionLimit = Math.max(1, limit / 2);
+        } else {
+            admissionLimit = Math.min(queueCapacity, limit + Math.max(1, queueCapacity / 16));
+        }
+    }
+
+    private void count(Rejection rejection) {
+        rejections.get(rejection).increment();
+    }
+
+    private void drop(Runnable task, Rejection rejection) {
+        count(rejection);
+        if (task instanceof Queued) {
+            task = ((Queued) task).task;
+        }
+        if (task instanceof Future) {
+            ((Future<?>) task).cancel(false);
+        }
+    }
+
+    public Policy getPolicy() {
+        return policy;
+    }
+
+    public long getSubmittedCount() {
+        return submitted.sum();
+    }
+
+    public long getRejectedCount(Rejection rejection) {
+        return rejections.get(rejection).sum();
+    }
+
+    /**
+     * Tasks not run by the pool, including the ones run by callers.
+     */
+    public long getRejectedCount() {
+        return rejections.values().stream().mapToLong(LongAdder::sum).sum();
+    }
+
+    public int getAdmissionLimit() {
+        return admissionLimit;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder result = new StringBuilder(String.format("policy=%s,queue=%d,admission=%d,submitted=%d",
+                policy, getQueue().size(), getAdmissionLimit(), getSubmittedCount()));
+        rejections.forEach((rejection, count) -> {
+            if (count.sum() > 0) {
+                result.append(',').append(rejection.name().toLowerCase()).append('=').append(count.sum());
+            }
+        });
+        return result.toString();
+    }
+
+    private class Queued implements Runnable {
+        private final Runnable task;
+        private final long enqueuedNanos;
+        private long startedNanos;
+        private boolean ran;
+
+        Queued(Runnable task, long enqueuedNanos) {
+            this.task = task;
+            this.enqueuedNanos = enqueuedNanos;
+        }
+
+        @Override
+        public void run() {
+            if (policy == Policy.DEADLINE && startedNanos - enqueuedNanos > maxQueueNanos) {
+                drop(task, Rejection.EXPIRED);
+                return;
+            }
+            ran = true;
+            task.run();
+        }
+    }
+
+    private static class Shedding implements RejectedExecutionHandler {
+
+        @Override
+        public void rejectedExecution(Runnable r, ThreadPoolExecutor pool) {
+            SheddingExecutor executor = (SheddingExecutor) pool;
+            if (executor.isShutdown()) {
+                executor.drop(r, Rejection.DISCARDED);
+                return;
+            }
+            switch (executor.policy) {
+                case DISCARD_OLDEST:
+                    Runnable oldest = executor.getQueue().poll();
+                    if (oldest != null) {
+                        executor.drop(oldest, Rejection.DISCARDED_OLDEST);
+                        // not execute(), the task is already wrapped and counted
+                        executor.retry(r);
+                    } else {
+                        executor.drop(r, Rejection.DISCARDED);
+                    }
+                    break;
+                case CALLER_RUNS:
+                    if (executor.callerRunning.incrementAndGet() <= executor.callerRunsLimit) {
+                        executor.count(Rejection.CALLER_RAN);
+                        try {
+                            r.run();
+                        } finally {
+                            executor.callerRunning.decrementAndGet();
+                        }
+                    } else {
+                        executor.callerRunning.decrementAndGet();
+                        executor.drop(r, Rejection.CALLER_LIMIT);
+                    }
+                    break;
+                default:
+                    executor.drop(r, Rejection.DISCARDED);
+            }
+        }
+    }
+
+    private void retry(Runnable task) {
+        super.execute(task);
+    }
+}
@@ -1,16 +1,28 @@
 package course.concurrency.m6_streams;
 
+import java.time.Duration;
 import java.util.concurrent.*;
 
 public class ThreadPoolTask {
 
     // Task #1
     public ThreadPoolExecutor getLifoExecutor() {
-        return null;
+        return new LifoExecutor(1, 1000, Duration.ofSeconds(1));
     }
 
     // Task #2
     public ThreadPoolExecutor getRejectExecutor() {
-        return null;
+        return new SheddingExecutor(8, 0, SheddingExecutor.Policy.DISCARD);
+    }
+
+    // interactive work first, batch work waits at most 500ms for it
+    public DeadlineExecutor getDeadlineExecutor() {
+        return new DeadlineExecutor(Runtime.getRuntime().availableProcessors(), Duration.ofMillis(500));
+    }
+
+    // sized by the wait/compute ratio of its tasks
+    public AdaptiveExecutor getAdaptiveExecutor() {
+        int cpus = Runtime.getRuntime().availableProcessors();
+        return new AdaptiveExecutor(cpus, cpus * 32, Duration.ofSeconds(1));
     }
 }
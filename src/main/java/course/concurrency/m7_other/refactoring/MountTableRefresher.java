@@ -0,0 +1,75 @@
+package course.concurrency.m7_other.refactoring;
+
+import static course.concurrency.m7_other.refactoring.Others.*;
+
+import java.util.List;
+
+public class MountTableRefresher {
+
+    /** Admin server on which refreshed to be invoked. */
+    private final String adminAddress;
+    private final MountTableManager manager;
+    /** Changes since the version the router has, null to reload the whole table. */
+    private final List<MountTableEntry> changes;
+    /** Version the router has after a successful refresh. */
+    private final long version;
+    /** System.nanoTime() when the refresh started, 0 before. */
+    private volatile long startedNanos;
+
+    public MountTableRefresher(MountTableManager manager,
+                               String adminAddress) {
+        this(manager, adminAddress, null, 0);
+    }
+
+    public MountTableRefresher(MountTableManager manager, String adminAddress,
+                               List<MountTableEntry> changes, long version) {
+        this.manager = manager;
+        this.adminAddress = adminAddress;
+        this.changes = changes;
+        this.version = version;
+    }
+
+    /**
+     * Refresh mount table cache of local and remote routers. Local and remote
+     * routers will be refreshed differently. Lets understand what are the
+     * local and remote routers and refresh will be done differently on these
+     * routers. Suppose there are three routers R1, R2 and R3. User want to add
+     * new mount table entry. He will connect to only one router, not all the
+     * routers. Suppose He connects to R1 and calls add mount table entry through
+     * API or CLI. Now in this context R1 is local router, R2 and R3 are remote
+     * routers. Because add mount table entry is invoked on R1, R1 will update the
+     * cache locally it need not to make RPC call. But R1 will make RPC calls to
+     * update cache on R2 and R3.
+     *
+     * @return true if cache was refreshed successfully.
+     */
+    public boolean refresh() {
+        startedNanos = System.nanoTime();
+        return changes == null ? manager.refresh() : manager.refresh(changes);
+    }
+
+    @Override
+    public String toString() {
+        return "MountTableRefresher [adminAddress=" + adminAddress + ", version=" + version
+                + ", changes=" + (changes == null ? "all" : changes.size()) + "]";
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    /**
+     * @return entries pushed to the router, -1 for a full reload
+     */
+    public int getChangeCount() {
+        return changes == null ? -1 : changes.size();
+    }
+
+    public long getStartedNanos() {
+        return startedNanos;
+    }
+
+    public String getAdminAddress() {
+        return adminAddress;
+    }
+}
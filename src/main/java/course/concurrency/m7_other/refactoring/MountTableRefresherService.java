@@ -1,15 +1,63 @@
 package course.concurrency.m7_other.refactoring;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
 import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
 
 
 public class MountTableRefresherService {
 
-    private Others.RouterStore routerStore = new Others.RouterStore();
+    private static final int REFRESH_THREADS = 32;
+
+    private Others.RouterStore routerStore;
+    private Others.MountTable mountTable = new Others.MountTable();
     private long cacheUpdateTimeout;
 
+    /**
+     * Mount table version each router admin confirmed by a successful refresh.
+     * A router without a version gets the whole table, the others only the
+     * entries changed since their version, and routers already at the current
+     * version aren't called at all.
+     */
+    private final Map<String, Long> acknowledgedVersions = new ConcurrentHashMap<>();
+    private final LongAdder fullRefreshes = new LongAdder();
+    private final LongAdder deltaRefreshes = new LongAdder();
+    private final LongAdder skippedRefreshes = new LongAdder();
+    private final LongAdder pushedEntries = new LongAdder();
+
+    /**
+     * Retries routers that failed a refresh, see scheduleRetry(). Retries only
+     * submit the refresh and return, so one thread serves any number of them.
+     */
+    private final ScheduledExecutorService retryScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "MountTableRefresh_Retries");
+        t.setDaemon(true);
+        return t;
+    });
+    private volatile int maxRetries;
+    private volatile long retryBaseDelay;
+    private volatile long retryMaxDelay;
+    // routers with a retry chain in progress, at most one chain per router
+    private final Set<String> retrying = ConcurrentHashMap.newKeySet();
+    private final Map<String, RouterHealth> health = new ConcurrentHashMap<>();
+    private final LongAdder retries = new LongAdder();
+    private final LongAdder abandonedRetries = new LongAdder();
+
+    // rounds waiting for all their routers to reach the round's version
+    private final Set<Convergence> converging = ConcurrentHashMap.newKeySet();
+    private final LongAdder convergedRounds = new LongAdder();
+    private final LongAdder unconvergedRounds = new LongAdder();
+    private final LongAdder convergenceNanos = new LongAdder();
+    private final AtomicLong maxConvergenceNanos = new AtomicLong();
+
+    private final RefreshTracer tracer = new RefreshTracer(address -> routerStore.get(address) != null);
+
     /**
      * All router admin clients cached. So no need to create the client again and
      * again. Router admin address(host:port) is used as key to cache RouterClient
@@ -22,27 +70,87 @@ public class MountTableRefresherService {
      */
     private ScheduledExecutorService clientCacheCleanerScheduler;
 
+    /**
+     * Runs refreshes of all routers, threads are reused between refreshes
+     * and stop when idle. Created by serviceInit() or on first use.
+     */
+    private ExecutorService refreshExecutor;
+
+    /**
+     * Runs coalesced refresh rounds, see requestRefresh().
+     */
+    private final ScheduledExecutorService roundScheduler = Executors.newSingleThreadScheduledExecutor(r -> {
+        Thread t = new Thread(r, "MountTableRefresh_Rounds");
+        t.setDaemon(true);
+        return t;
+    });
+    private final Object roundLock = new Object();
+    // completed by the round that serves the requests made since the last round started
+    private CompletableFuture<Void> nextRound;
+    private boolean roundScheduled;
+    private volatile long refreshDebounce;
+    private final LongAdder refreshRequests = new LongAdder();
+    private final LongAdder refreshRounds = new LongAdder();
+
+    /**
+     * Forgets everything known about a router once it leaves the store.
+     */
+    private final Others.RouterStore.Listener routerListener = new Others.RouterStore.Listener() {
+        @Override
+        public void routerRemoved(Others.RouterState state) {
+            forget(state.getAdminAddress());
+            removeFromCache(state.getAdminAddress());
+        }
+    };
+
+    public MountTableRefresherService() {
+        setRouterStore(new Others.RouterStore());
+    }
+
     public void serviceInit()  {
         long routerClientMaxLiveTime = 15L;
         this.cacheUpdateTimeout = 10L;
-        routerClientsCache = new Others.LoadingCache<String, Others.RouterClient>();
-        routerStore.getCachedRecords().stream().map(Others.RouterState::getAdminAddress)
-                .forEach(addr -> routerClientsCache.add(addr, new Others.RouterClient()));
+        setRetryPolicy(3, 100L, 5_000L);
+        // clients are created on first use and recreated after max live time
+        routerClientsCache = new Others.LoadingCache<>(
+                address -> new Others.RouterClient(), routerClientMaxLiveTime, TimeUnit.MILLISECONDS);
 
         initClientCacheCleaner(routerClientMaxLiveTime);
+        refreshExecutor();
     }
 
     public void serviceStop() {
-        clientCacheCleanerScheduler.shutdown();
-        // remove and close all admin clients
-        routerClientsCache.cleanUp();
+        // not started if serviceInit() wasn't called
+        if (clientCacheCleanerScheduler != null) {
+            clientCacheCleanerScheduler.shutdown();
+        }
+        roundScheduler.shutdownNow();
+        synchronized (roundLock) {
+            // its round was scheduled but won't run anymore
+            failNextRound();
+        }
+        retryScheduler.shutdownNow();
+        synchronized (this) {
+            if (refreshExecutor != null) {
+                // queued refreshes never start their timeout, cancelling them completes their results
+                for (Runnable dropped : refreshExecutor.shutdownNow()) {
+                    if (dropped instanceof Future) {
+                        ((Future<?>) dropped).cancel(false);
+                    }
+                }
+            }
+        }
+        // remove and close all admin clients, no cache before serviceInit()
+        if (routerClientsCache != null) {
+            routerClientsCache.invalidateAll();
+        }
     }
 
     private void initClientCacheCleaner(long routerClientMaxLiveTime) {
         ThreadFactory tf = new ThreadFactory() {
             @Override
             public Thread newThread(Runnable r) {
-                Thread t = new Thread();
+                Thread t = new Thread(r);
                 t.setName("MountTableRefresh_ClientsCacheCleaner");
                 t.setDaemon(true);
                 return t;
@@ -60,80 +168,271 @@ public class MountTableRefresherService {
                 routerClientMaxLiveTime, TimeUnit.MILLISECONDS);
     }
 
+    private synchronized ExecutorService refreshExecutor() {
+        if (refreshExecutor == null) {
+            refreshExecutor = createRefreshExecutor();
+        }
+        return refreshExecutor;
+    }
+
+    private static ExecutorService createRefreshExecutor() {
+        AtomicInteger threadNumber = new AtomicInteger();
+        ThreadPoolExecutor executor = new ThreadPoolExecutor(REFRESH_THREADS, REFRESH_THREADS,
+                60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), r -> {
+                    Thread t = new Thread(r, "MountTableRefresh_" + threadNumber.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                });
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
     /**
      * Refresh mount table cache of this router as well as all other routers.
      */
     public void refresh()  {
 
         List<Others.RouterState> cachedRecords = routerStore.getCachedRecords();
-        List<MountTableRefresherThread> refreshThreads = new ArrayList<>();
+        // changes up to this version are visible, later ones may be pushed too and are pushed again next time
+        long version = mountTable.getVersion();
+        List<MountTableRefresher> refreshers = new ArrayList<>();
         for (Others.RouterState routerState : cachedRecords) {
             String adminAddress = routerState.getAdminAddress();
             if (adminAddress == null || adminAddress.length() == 0) {
                 // this router has not enabled router admin.
                 continue;
             }
+            Long acknowledged = acknowledgedVersions.get(adminAddress);
+            if (acknowledged != null && acknowledged >= version) {
+                skippedRefreshes.increment();
+                continue;
+            }
             if (isLocalAdmin(adminAddress)) {
                 /*
                  * Local router's cache update does not require RPC call, so no need for
                  * RouterClient
                  */
-                refreshThreads.add(getLocalRefresher(adminAddress));
+                refreshers.add(getLocalRefresher(adminAddress, acknowledged, version));
             } else {
-                refreshThreads.add(new MountTableRefresherThread(
-                            new Others.MountTableManager(adminAddress), adminAddress));
+                refreshers.add(createRefresher(
+                        getManager(adminAddress), adminAddress, acknowledged, version));
             }
         }
-        if (!refreshThreads.isEmpty()) {
-            invokeRefresh(refreshThreads);
+        if (!refreshers.isEmpty()) {
+            // with more routers than threads, flapping routers wait behind the healthy ones
+            refreshers.sort(Comparator.comparingDouble(
+                    (MountTableRefresher r) -> getHealth(r.getAdminAddress())).reversed());
+            Convergence convergence = new Convergence(version, System.nanoTime());
+            refreshers.forEach(r -> convergence.pending.add(r.getAdminAddress()));
+            converging.add(convergence);
+            invokeRefresh(refreshers);
         }
     }
 
-    protected MountTableRefresherThread getLocalRefresher(String adminAddress) {
-        return new MountTableRefresherThread(new Others.MountTableManager("local"), adminAddress);
+    /**
+     * Asks for a refresh without waiting for it. Requests made while a round
+     * is running are merged into one follow-up round, so the number of rounds
+     * depends on how long a round takes rather than on the number of edits,
+     * and every edit is still seen by a round that started after it.
+     *
+     * @return completes when a round started after this request is done,
+     * fails with RejectedExecutionException once the service is stopped
+     */
+    public CompletableFuture<Void> requestRefresh() {
+        refreshRequests.increment();
+        synchronized (roundLock) {
+            if (roundScheduler.isShutdown()) {
+                return CompletableFuture.failedFuture(new RejectedExecutionException("Service is stopped"));
+            }
+            if (nextRound == null) {
+                nextRound = new CompletableFuture<>();
+                if (!roundScheduled) {
+                    roundScheduled = true;
+                    scheduleRound();
+                }
+            }
+            return nextRound;
+        }
     }
 
-    private void removeFromCache(String adminAddress) {
-        routerClientsCache.invalidate(adminAddress);
+    // under roundLock
+    private void scheduleRound() {
+        try {
+            roundScheduler.schedule(this::runRound, refreshDebounce, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stopped concurrently
+            failNextRound();
+        }
     }
 
-    private void invokeRefresh(List<MountTableRefresherThread> refreshThreads) {
-        CountDownLatch countDownLatch = new CountDownLatch(refreshThreads.size());
-        // start all the threads
-        for (MountTableRefresherThread refThread : refreshThreads) {
-            refThread.setCountDownLatch(countDownLatch);
-            refThread.start();
+    // under roundLock
+    private void failNextRound() {
+        roundScheduled = false;
+        if (nextRound != null) {
+            nextRound.completeExceptionally(new RejectedExecutionException("Service is stopped"));
+            nextRound = null;
+        }
+    }
+
+    private void runRound() {
+        CompletableFuture<Void> round;
+        synchronized (roundLock) {
+            round = nextRound;
+            nextRound = null;
+        }
+        if (round == null) {
+            // already failed by serviceStop()
+            return;
         }
         try {
-            /*
-             * Wait for all the thread to complete, await method returns false if
-             * refresh is not finished within specified time
-             */
-            boolean allReqCompleted =
-                    countDownLatch.await(cacheUpdateTimeout, TimeUnit.MILLISECONDS);
-            if (!allReqCompleted) {
-                log("Not all router admins updated their cache");
+            refreshRounds.increment();
+            refresh();
+            round.complete(null);
+        } catch (Throwable e) {
+            // an Error too, nobody else would complete the requests of this round
+            round.completeExceptionally(e);
+        } finally {
+            synchronized (roundLock) {
+                if (nextRound != null) {
+                    // requested while this round was running
+                    scheduleRound();
+                } else {
+                    roundScheduled = false;
+                }
             }
+        }
+    }
+
+    protected MountTableRefresher getLocalRefresher(String adminAddress, Long acknowledged, long version) {
+        return createRefresher(getManager("local"), adminAddress, acknowledged, version);
+    }
+
+    private MountTableRefresher createRefresher(Others.MountTableManager manager, String adminAddress,
+                                                Long acknowledged, long version) {
+        if (acknowledged == null) {
+            fullRefreshes.increment();
+            return new MountTableRefresher(manager, adminAddress, null, version);
+        }
+        List<Others.MountTableEntry> changes = mountTable.changesSince(acknowledged);
+        deltaRefreshes.increment();
+        pushedEntries.add(changes.size());
+        return new MountTableRefresher(manager, adminAddress, changes, version);
+    }
+
+    protected Others.MountTableManager getManager(String adminAddress) {
+        if (isLocalAdmin(adminAddress)) {
+            return new Others.MountTableManager(adminAddress);
+        }
+        return new Others.MountTableManager(adminAddress, routerClientsCache.get(adminAddress));
+    }
+
+    private void removeFromCache(String adminAddress) {
+        // no cache before serviceInit()
+        if (routerClientsCache != null) {
+            routerClientsCache.invalidate(adminAddress);
+        }
+    }
+
+    private void invokeRefresh(List<MountTableRefresher> refreshers) {
+        List<CompletableFuture<Boolean>> results = new ArrayList<>(refreshers.size());
+        for (MountTableRefresher refresher : refreshers) {
+            results.add(submit(refresher));
+        }
+        try {
+            // every result completes by its own timeout
+            CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).get();
         } catch (InterruptedException e) {
             log("Mount table cache refresher was interrupted.");
+            results.forEach(result -> result.cancel(true));
+            Thread.currentThread().interrupt();
+        } catch (ExecutionException e) {
+            // failures are counted by logResult
         }
-        logResult(refreshThreads);
+        if (results.stream().anyMatch(MountTableRefresherService::isTimedOut)) {
+            log("Not all router admins updated their cache");
+        }
+        logResult(refreshers, results);
+    }
+
+    /*
+     * The result is completed by the task, by the timeout or by cancellation,
+     * whichever comes first. A task that times out is interrupted, and its late
+     * outcome can't change the result anymore.
+     *
+     * The timeout starts when the task starts: with more routers than threads,
+     * a refresh queued behind slow ones isn't failed before it ran. Timed out
+     * tasks are interrupted, so the queue moves on at least once per timeout.
+     * Tasks dropped from the queue by serviceStop() cancel their results.
+     */
+    private CompletableFuture<Boolean> submit(MountTableRefresher refresher) {
+        long submittedNanos = System.nanoTime();
+        CompletableFuture<Boolean> result = new CompletableFuture<>();
+        FutureTask<Void> task = new FutureTask<>(() -> {
+            result.orTimeout(cacheUpdateTimeout, TimeUnit.MILLISECONDS);
+            try {
+                result.complete(refresher.refresh());
+            } catch (Throwable e) {
+                result.completeExceptionally(e);
+            }
+        }, null) {
+            @Override
+            protected void done() {
+                // dropped from the queue before it ran
+                if (isCancelled()) {
+                    result.cancel(false);
+                }
+            }
+        };
+        refreshExecutor().execute(task);
+        result.whenComplete((ok, e) -> {
+            if (e != null) {
+                task.cancel(true);
+            }
+            String adminAddress = refresher.getAdminAddress();
+            tracer.record(adminAddress, isLocalAdmin(adminAddress), submittedNanos,
+                    refresher.getStartedNanos(), System.nanoTime(), outcome(ok, e));
+        });
+        return result;
+    }
+
+    private static RefreshTracer.Outcome outcome(Boolean ok, Throwable e) {
+        if (e == null) {
+            return ok ? RefreshTracer.Outcome.SUCCESS : RefreshTracer.Outcome.FAILURE;
+        }
+        if (e instanceof TimeoutException) {
+            return RefreshTracer.Outcome.TIMEOUT;
+        }
+        return e instanceof CancellationException ? RefreshTracer.Outcome.CANCELLED : RefreshTracer.Outcome.ERROR;
+    }
+
+    private static boolean isTimedOut(CompletableFuture<Boolean> result) {
+        return result.isDone() && result.handle((ok, e) -> e instanceof TimeoutException).join();
     }
 
     private boolean isLocalAdmin(String adminAddress) {
         return adminAddress.contains("local");
     }
 
-    private void logResult(List<MountTableRefresherThread> refreshThreads) {
+    /**
+     * A refresh that failed, threw, timed out or was cancelled is a failure.
+     */
+    private void logResult(List<MountTableRefresher> refreshers, List<CompletableFuture<Boolean>> results) {
         int successCount = 0;
         int failureCount = 0;
-        for (MountTableRefresherThread mountTableRefreshThread : refreshThreads) {
-            if (mountTableRefreshThread.isSuccess()) {
+        for (int i = 0; i < refreshers.size(); i++) {
+            CompletableFuture<Boolean> result = results.get(i);
+            MountTableRefresher refresher = refreshers.get(i);
+            if (result.isDone() && !result.isCompletedExceptionally() && result.join()) {
                 successCount++;
+                succeeded(refresher);
             } else {
                 failureCount++;
                 // remove RouterClient from cache so that new client is created
-                removeFromCache(mountTableRefreshThread.getAdminAddress());
+                removeFromCache(refresher.getAdminAddress());
+                healthOf(refresher.getAdminAddress()).update(false);
+                if (retrying.add(refresher.getAdminAddress())) {
+                    scheduleRetry(refresher.getAdminAddress(), 1);
+                }
             }
         }
         log(String.format(
@@ -141,6 +440,123 @@ public class MountTableRefresherService {
                 successCount, failureCount));
     }
 
+    private void succeeded(MountTableRefresher refresher) {
+        String adminAddress = refresher.getAdminAddress();
+        long version = acknowledgedVersions.merge(adminAddress, refresher.getVersion(), Math::max);
+        healthOf(adminAddress).update(true);
+        if (routerStore.get(adminAddress) == null) {
+            // removed while it was refreshed
+            forget(adminAddress);
+            return;
+        }
+        for (Convergence convergence : converging) {
+            if (version >= convergence.version && convergence.pending.remove(adminAddress)) {
+                checkConverged(convergence);
+            }
+        }
+    }
+
+    private void forget(String adminAddress) {
+        acknowledgedVersions.remove(adminAddress);
+        health.remove(adminAddress);
+        // a scheduled retry finds the router gone
+        retrying.remove(adminAddress);
+        tracer.remove(adminAddress);
+        for (Convergence convergence : converging) {
+            if (convergence.pending.remove(adminAddress)) {
+                checkConverged(convergence);
+            }
+        }
+    }
+
+    private void checkConverged(Convergence convergence) {
+        if (convergence.pending.isEmpty() && converging.remove(convergence)) {
+            long nanos = System.nanoTime() - convergence.startNanos;
+            // times first, whoever sees the round counted sees its time too
+            convergenceNanos.add(nanos);
+            maxConvergenceNanos.accumulateAndGet(nanos, Math::max);
+            convergedRounds.increment();
+        }
+    }
+
+    private void abandoned(String adminAddress) {
+        for (Convergence convergence : converging) {
+            if (convergence.pending.contains(adminAddress) && converging.remove(convergence)) {
+                unconvergedRounds.increment();
+            }
+        }
+        // last, whoever sees the retry abandoned sees its rounds unconverged too
+        abandonedRetries.increment();
+    }
+
+    /*
+     * Equal jitter: a random delay between half and all of the exponential
+     * backoff, so routers that failed together don't retry together but never
+     * retry right away. An unhealthy router waits up to four times longer,
+     * but never longer than the max delay.
+     */
+    private void scheduleRetry(String adminAddress, int attempt) {
+        if (attempt > maxRetries || retryScheduler.isShutdown()) {
+            retrying.remove(adminAddress);
+            abandoned(adminAddress);
+            return;
+        }
+        long backoff = Math.min(retryMaxDelay, retryBaseDelay << Math.min(attempt - 1, 30));
+        backoff = Math.min(retryMaxDelay, (long) (backoff / Math.max(0.25, getHealth(adminAddress))));
+        long delay = backoff / 2 + ThreadLocalRandom.current().nextLong(backoff / 2 + 1);
+        try {
+            retryScheduler.schedule(() -> retry(adminAddress, attempt), delay, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // stopped meanwhile
+            retrying.remove(adminAddress);
+        }
+    }
+
+    private void retry(String adminAddress, int attempt) {
+        if (routerStore.get(adminAddress) == null) {
+            // removed meanwhile, forget() did the rest
+            retrying.remove(adminAddress);
+            return;
+        }
+        long version = mountTable.getVersion();
+        Long acknowledged = acknowledgedVersions.get(adminAddress);
+        if (acknowledged != null && acknowledged >= version) {
+            // a round refreshed the router meanwhile
+            retrying.remove(adminAddress);
+            return;
+        }
+        retries.increment();
+        MountTableRefresher refresher;
+        try {
+            refresher = isLocalAdmin(adminAddress)
+                    ? getLocalRefresher(adminAddress, acknowledged, version)
+                    : createRefresher(getManager(adminAddress), adminAddress, acknowledged, version);
+        } catch (RuntimeException e) {
+            healthOf(adminAddress).update(false);
+            scheduleRetry(adminAddress, attempt + 1);
+            return;
+        }
+        submit(refresher).whenComplete((ok, e) -> {
+            if (e == null && ok) {
+                retrying.remove(adminAddress);
+                succeeded(refresher);
+                // a round started meanwhile failed the router while this chain was running
+                if (converging.stream().anyMatch(c -> c.pending.contains(adminAddress))
+                        && retrying.add(adminAddress)) {
+                    scheduleRetry(adminAddress, 1);
+                }
+            } else {
+                removeFromCache(adminAddress);
+                healthOf(adminAddress).update(false);
+                scheduleRetry(adminAddress, attempt + 1);
+            }
+        });
+    }
+
+    private RouterHealth healthOf(String adminAddress) {
+        return health.computeIfAbsent(adminAddress, a -> new RouterHealth());
+    }
+
     public void log(String message) {
         System.out.println(message);
     }
@@ -153,6 +569,166 @@ public class MountTableRefresherService {
     }
 
     public void setRouterStore(Others.RouterStore routerStore) {
+        if (this.routerStore != null) {
+            this.routerStore.removeListener(routerListener);
+        }
         this.routerStore = routerStore;
+        routerStore.addListener(routerListener);
+    }
+
+    public void setMountTable(Others.MountTable mountTable) {
+        this.mountTable = mountTable;
+        acknowledgedVersions.clear();
+    }
+
+    public Others.MountTable getMountTable() {
+        return mountTable;
+    }
+
+    /**
+     * Routers that got the whole table because their version was unknown.
+     */
+    public long getFullRefreshes() {
+        return fullRefreshes.sum();
+    }
+
+    public long getDeltaRefreshes() {
+        return deltaRefreshes.sum();
+    }
+
+    /**
+     * Routers not called because they already had the current version.
+     */
+    public long getSkippedRefreshes() {
+        return skippedRefreshes.sum();
+    }
+
+    /**
+     * Entries sent by delta refreshes, full refreshes aren't counted.
+     */
+    public long getPushedEntries() {
+        return pushedEntries.sum();
+    }
+
+    /**
+     * How long a requested round waits for more requests before it starts.
+     */
+    public void setRefreshDebounce(long refreshDebounce) {
+        this.refreshDebounce = refreshDebounce;
+    }
+
+    public long getRefreshRequests() {
+        return refreshRequests.sum();
+    }
+
+    public long getRefreshRounds() {
+        return refreshRounds.sum();
+    }
+
+    /**
+     * Retries a failed router up to maxRetries times, the n-th retry after
+     * about baseDelay * 2^(n-1) milliseconds but not more than maxDelay.
+     * No retries until set, serviceInit() sets 3 retries from 100 ms.
+     */
+    public void setRetryPolicy(int maxRetries, long baseDelay, long maxDelay) {
+        this.maxRetries = maxRetries;
+        this.retryBaseDelay = Math.max(1, baseDelay);
+        this.retryMaxDelay = Math.max(this.retryBaseDelay, maxDelay);
+    }
+
+    /**
+     * Success rate of recent refreshes of the router, from 0 to 1,
+     * 1 for a router that wasn't refreshed yet.
+     */
+    public double getHealth(String adminAddress) {
+        RouterHealth routerHealth = health.get(adminAddress);
+        return routerHealth == null ? 1 : routerHealth.score;
+    }
+
+    public long getRetries() {
+        return retries.sum();
+    }
+
+    /**
+     * Routers that still failed after the last retry.
+     */
+    public long getAbandonedRetries() {
+        return abandonedRetries.sum();
+    }
+
+    /**
+     * Rounds after which every refreshed router reached the round's version,
+     * by the round itself or by retries.
+     */
+    public long getConvergedRounds() {
+        return convergedRounds.sum();
+    }
+
+    /**
+     * Rounds where some router gave up retrying before reaching the version.
+     */
+    public long getUnconvergedRounds() {
+        return unconvergedRounds.sum();
+    }
+
+    /**
+     * Time from the start of a round until its last router reached the version.
+     */
+    public double getAverageConvergenceMillis() {
+        long rounds = convergedRounds.sum();
+        return rounds == 0 ? 0 : convergenceNanos.sum() / 1e6 / rounds;
+    }
+
+    public double getMaxConvergenceMillis() {
+        return maxConvergenceNanos.get() / 1e6;
+    }
+
+    /**
+     * Latency of every refresh of every router, including retries.
+     */
+    public RefreshTracer getRefreshTracer() {
+        return tracer;
+    }
+
+    /**
+     * Local and remote latency and the routers with the highest p99 latency.
+     */
+    public String getSlowRouterReport(int limit) {
+        return tracer.getSlowRouterReport(limit);
+    }
+
+    /**
+     * Replaces the default pool, e.g. with a virtual thread per task executor.
+     */
+    public synchronized void setRefreshExecutor(ExecutorService refreshExecutor) {
+        if (this.refreshExecutor != null) {
+            this.refreshExecutor.shutdown();
+        }
+        this.refreshExecutor = refreshExecutor;
+    }
+
+    /*
+     * Exponentially weighted success rate, a router that alternates between
+     * success and failure stays around the middle instead of looking healthy
+     * after every success.
+     */
+    private static class RouterHealth {
+        private static final double WEIGHT = 0.3;
+        private volatile double score = 1;
+
+        synchronized void update(boolean success) {
+            score = score * (1 - WEIGHT) + (success ? WEIGHT : 0);
+        }
+    }
+
+    private static class Convergence {
+        private final long version;
+        private final long startNanos;
+        private final Set<String> pending = ConcurrentHashMap.newKeySet();
+
+        Convergence(long version, long startNanos) {
+            this.version = version;
+            this.startNanos = startNanos;
+        }
     }
-}
\ No newline at end of file
+}
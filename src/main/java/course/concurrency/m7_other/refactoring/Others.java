@@ -1,27 +1,209 @@
 package course.concurrency.m7_other.refactoring;
 
 import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ThreadLocalRandom;
+import java.util.NavigableMap;
+import java.util.Queue;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.function.LongSupplier;
 
 public class Others {
 
+    /**
+     * Cache with a max live time per entry, counted from when the value was
+     * loaded or added. A miss loads the value, and concurrent misses for the
+     * same key wait for one load instead of loading it each.
+     *
+     * Entries expire in the order they were loaded, so expired ones are
+     * evicted from the head of a queue a few at a time on every access,
+     * and cleanUp() evicts all of them.
+     */
     public static class LoadingCache<K, V> {
-        Map<K,V> map = new ConcurrentHashMap<>();
+
+        private static final int EVICTIONS_PER_ACCESS = 4;
+
+        private final Map<K, Entry<K, V>> map = new ConcurrentHashMap<>();
+        private final Queue<Entry<K, V>> loadOrder = new ConcurrentLinkedQueue<>();
+
+        private final Function<K, V> loader;
+        private final long maxLiveNanos;
+        private final LongSupplier clock;
+
+        private final LongAdder hits = new LongAdder();
+        private final LongAdder misses = new LongAdder();
+        private final LongAdder loadFailures = new LongAdder();
+        private final LongAdder evictions = new LongAdder();
+
+        /**
+         * Values are only added, never expire.
+         */
+        public LoadingCache() {
+            this(key -> null, 0, TimeUnit.MILLISECONDS);
+        }
+
+        public LoadingCache(Function<K, V> loader, long maxLiveTime, TimeUnit unit) {
+            this(loader, unit.toNanos(maxLiveTime), System::nanoTime);
+        }
+
+        LoadingCache(Function<K, V> loader, long maxLiveNanos, LongSupplier clock) {
+            this.loader = loader;
+            this.maxLiveNanos = maxLiveNanos;
+            this.clock = clock;
+        }
+
+        /**
+         * @return cached value, loaded if missing or expired
+         */
+        public V get(K key) {
+            evictExpired(EVICTIONS_PER_ACCESS);
+            Entry<K, V> entry = map.get(key);
+            if (entry != null && !isExpired(entry, clock.getAsLong())) {
+                hits.increment();
+                return await(entry);
+            }
+            misses.increment();
+
+            Entry<K, V> loading = new Entry<>(key, new CompletableFuture<>());
+            Entry<K, V> current = map.compute(key,
+                    (k, old) -> old == null || isExpired(old, clock.getAsLong()) ? loading : old);
+            if (current != loading) {
+                // someone else is loading it or just did
+                return await(current);
+            }
+            try {
+                V value = loader.apply(key);
+                if (value == null) {
+                    map.remove(key, loading);
+                } else {
+                    loaded(loading);
+                }
+                loading.value.complete(value);
+                return value;
+            } catch (Throwable e) {
+                // failures are not cached, the next get loads again
+                loadFailures.increment();
+                map.remove(key, loading);
+                loading.value.completeExceptionally(e);
+                throw e;
+            }
+        }
 
         public void add(K key, V value) {
-            map.put(key, value);
+            Entry<K, V> entry = new Entry<>(key, CompletableFuture.completedFuture(value));
+            map.put(key, entry);
+            loaded(entry);
+            evictExpired(EVICTIONS_PER_ACCESS);
         }
 
-        public void invalidate(String address) {
-            map.remove(address);
+        private void loaded(Entry<K, V> entry) {
+            entry.loaded(clock.getAsLong());
+            if (maxLiveNanos > 0) {
+                loadOrder.offer(entry);
+            }
         }
 
-        public void cleanUp() { map.clear(); }
+        public void invalidate(K key) {
+            map.remove(key);
+        }
+
+        public void invalidateAll() {
+            map.clear();
+            loadOrder.clear();
+        }
+
+        /**
+         * Evicts all expired entries.
+         */
+        public void cleanUp() {
+            evictExpired(Integer.MAX_VALUE);
+        }
+
+        private void evictExpired(int limit) {
+            if (maxLiveNanos == 0) {
+                return;
+            }
+            long now = clock.getAsLong();
+            Entry<K, V> oldest;
+            for (int i = 0; i < limit && (oldest = loadOrder.peek()) != null && isExpired(oldest, now); i++) {
+                if (loadOrder.remove(oldest) && map.remove(oldest.key, oldest)) {
+                    evictions.increment();
+                }
+            }
+        }
+
+        private boolean isExpired(Entry<K, V> entry, long now) {
+            // an entry being loaded has no load time yet
+            return maxLiveNanos > 0 && entry.loadedAt != Entry.LOADING && now - entry.loadedAt >= maxLiveNanos;
+        }
 
+        private static <V> V await(Entry<?, V> entry) {
+            try {
+                return entry.value.join();
+            } catch (CompletionException e) {
+                if (e.getCause() instanceof RuntimeException) {
+                    throw (RuntimeException) e.getCause();
+                }
+                if (e.getCause() instanceof Error) {
+                    throw (Error) e.getCause();
+                }
+                throw e;
+            }
+        }
+
+        public int size() {
+            return map.size();
+        }
+
+        public long getHitCount() {
+            return hits.sum();
+        }
+
+        public long getMissCount() {
+            return misses.sum();
+        }
+
+        public double getHitRate() {
+            long hitCount = hits.sum();
+            long total = hitCount + misses.sum();
+            return total == 0 ? 1 : (double) hitCount / total;
+        }
+
+        public long getLoadFailureCount() {
+            return loadFailures.sum();
+        }
+
+        public long getEvictionCount() {
+            return evictions.sum();
+        }
+
+        @Override
+        public String toString() {
+            return String.format("size=%d,hits=%d,misses=%d,hitRate=%.2f,loadFailures=%d,evictions=%d",
+                    size(), getHitCount(), getMissCount(), getHitRate(), getLoadFailureCount(), getEvictionCount());
+        }
+
+        private static class Entry<K, V> {
+            private static final long LOADING = Long.MIN_VALUE;
+
+            private final K key;
+            private final CompletableFuture<V> value;
+            private volatile long loadedAt = LOADING;
+
+            Entry(K key, CompletableFuture<V> value) {
+                this.key = key;
+                this.value = value;
+            }
+
+            void loaded(long now) {
+                loadedAt = now == LOADING ? now + 1 : now;
+            }
+        }
     }
 
     public static class RouterClient {
@@ -41,27 +223,250 @@ public class Others {
         }
     }
 
+    /**
+     * Routers by admin address. Adding, removing and looking up a router are
+     * O(1): changes take the store lock, lookups take no lock at all.
+     *
+     * getCachedRecords() returns an immutable snapshot in the order routers were
+     * added. All readers share one snapshot until the next change, so a refresh
+     * iterates a consistent list while routers come and go, and the O(n) copy
+     * is made once per burst of changes instead of once per reader.
+     */
     public static class RouterStore {
-        List<RouterState> states = new ArrayList<>();
 
+        /**
+         * Called after the change by the thread that made it, outside the
+         * store lock, so listeners of concurrent changes may run concurrently.
+         */
+        public interface Listener {
+            default void routerAdded(RouterState state) {
+            }
+
+            default void routerRemoved(RouterState state) {
+            }
+        }
+
+        private final Map<String, RouterState> byAddress = new ConcurrentHashMap<>();
+        // guarded by this, keeps the order for snapshots
+        private final Map<String, RouterState> ordered = new LinkedHashMap<>();
+        // null after a change until the next read
+        private volatile List<RouterState> snapshot = List.of();
+        private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+        /**
+         * @return false if a router with the same admin address is already there
+         */
+        public boolean add(RouterState state) {
+            return !addAll(List.of(state)).isEmpty();
+        }
+
+        /**
+         * Adds the routers in one change: a snapshot has all of them or none.
+         *
+         * @return added routers, without those whose admin address was already there
+         */
+        public List<RouterState> addAll(List<RouterState> states) {
+            List<RouterState> added = new ArrayList<>(states.size());
+            synchronized (this) {
+                for (RouterState state : states) {
+                    if (ordered.putIfAbsent(state.getAdminAddress(), state) == null) {
+                        byAddress.put(state.getAdminAddress(), state);
+                        added.add(state);
+                    }
+                }
+                if (!added.isEmpty()) {
+                    snapshot = null;
+                }
+            }
+            for (RouterState state : added) {
+                for (Listener listener : listeners) {
+                    listener.routerAdded(state);
+                }
+            }
+            return added;
+        }
+
+        /**
+         * @return removed router, null if there was none
+         */
+        public RouterState remove(String adminAddress) {
+            List<RouterState> removed = removeAll(List.of(adminAddress));
+            return removed.isEmpty() ? null : removed.get(0);
+        }
+
+        /**
+         * Removes the routers in one change: a snapshot has all of them or none.
+         *
+         * @return removed routers, without the addresses that weren't there
+         */
+        public List<RouterState> removeAll(List<String> adminAddresses) {
+            List<RouterState> removed = new ArrayList<>(adminAddresses.size());
+            synchronized (this) {
+                for (String adminAddress : adminAddresses) {
+                    RouterState state = ordered.remove(adminAddress);
+                    if (state != null) {
+                        byAddress.remove(adminAddress);
+                        removed.add(state);
+                    }
+                }
+                if (!removed.isEmpty()) {
+                    snapshot = null;
+                }
+            }
+            for (RouterState state : removed) {
+                for (Listener listener : listeners) {
+                    listener.routerRemoved(state);
+                }
+            }
+            return removed;
+        }
+
+        public RouterState get(String adminAddress) {
+            return byAddress.get(adminAddress);
+        }
+
+        public int size() {
+            return byAddress.size();
+        }
+
+        /**
+         * @return immutable snapshot of all routers
+         */
         public List<RouterState> getCachedRecords() {
-            return states;
+            List<RouterState> current = snapshot;
+            if (current != null) {
+                return current;
+            }
+            synchronized (this) {
+                if (snapshot == null) {
+                    snapshot = List.copyOf(ordered.values());
+                }
+                return snapshot;
+            }
+        }
+
+        public void addListener(Listener listener) {
+            listeners.add(listener);
+        }
+
+        public void removeListener(Listener listener) {
+            listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Mount point and its target, null target if the mount point was removed.
+     */
+    public static class MountTableEntry {
+        private final String path;
+        private final String target;
+        private final long version;
+
+        public MountTableEntry(String path, String target, long version) {
+            this.path = path;
+            this.target = target;
+            this.version = version;
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public String getTarget() {
+            return target;
+        }
+
+        public boolean isRemoved() {
+            return target == null;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+    }
+
+    /**
+     * Mount table where every change gets the next version. Only the latest
+     * change of each path is kept, so changes since any version are at most
+     * one entry per path, and usually just the few paths edited since then.
+     */
+    public static class MountTable {
+        private final Map<String, MountTableEntry> latest = new HashMap<>();
+        private final NavigableMap<Long, MountTableEntry> changes = new ConcurrentSkipListMap<>();
+        private volatile long version;
+
+        public synchronized long put(String path, String target) {
+            return change(path, target);
+        }
+
+        public synchronized long remove(String path) {
+            return change(path, null);
+        }
+
+        private long change(String path, String target) {
+            long next = version + 1;
+            MountTableEntry entry = new MountTableEntry(path, target, next);
+            MountTableEntry previous = latest.put(path, entry);
+            if (previous != null) {
+                changes.remove(previous.getVersion());
+            }
+            changes.put(next, entry);
+            // published after the change, so a reader of version sees all changes up to it
+            version = next;
+            return next;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        /**
+         * Latest changes of paths changed after the version, may include
+         * changes newer than getVersion() returned before the call.
+         */
+        public List<MountTableEntry> changesSince(long version) {
+            return new ArrayList<>(changes.tailMap(version, false).values());
+        }
+
+        public int size() {
+            return (int) changes.values().stream().filter(e -> !e.isRemoved()).count();
         }
     }
 
     public static class MountTableManager {
 
         private String address;
+        private RouterClient client;
+
         public MountTableManager(String address) {
             this.address = address;
         }
 
+        /**
+         * Manager of a remote router, refreshes through the admin client.
+         */
+        public MountTableManager(String address, RouterClient client) {
+            this.address = address;
+            this.client = client;
+        }
+
         public String getAddress() {
             return address;
         }
 
+        public RouterClient getClient() {
+            return client;
+        }
+
         public boolean refresh() {
             return ThreadLocalRandom.current().nextBoolean();
         }
+
+        /**
+         * Applies only the changed entries instead of reloading the table.
+         */
+        public boolean refresh(List<MountTableEntry> changes) {
+            return ThreadLocalRandom.current().nextBoolean();
+        }
     }
 }
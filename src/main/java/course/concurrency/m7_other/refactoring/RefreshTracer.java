@@ -0,0 +1,237 @@
+package course.concurrency.m7_other.refactoring;
+
+import course.concurrency.m3_shared.metrics.Histogram;
+
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.Predicate;
+
+/**
+ * Latency of router refreshes from submission to outcome, per router and for
+ * all local and all remote routers.
+ *
+ * Recording a refresh of a known router is a map lookup and a few atomic
+ * updates without allocation. Stats and reports allocate when asked for.
+ * Latencies are kept in the log-linear histograms of the metrics module.
+ */
+public class RefreshTracer {
+
+    public enum Outcome { SUCCESS, FAILURE, ERROR, TIMEOUT, CANCELLED }
+
+    private final Map<String, RouterLatency> routers = new ConcurrentHashMap<>();
+    private final Histogram local = new Histogram();
+    private final Histogram remote = new Histogram();
+    // routers whose refreshes are traced per router
+    private final Predicate<String> isRouter;
+
+    /**
+     * @param isRouter whether a router is still known, false for a router
+     *                 before remove() is called for it
+     */
+    public RefreshTracer(Predicate<String> isRouter) {
+        this.isRouter = isRouter;
+    }
+
+    /**
+     * A refresh that ends after its router is gone only counts for all local
+     * or all remote routers.
+     *
+     * @param startedNanos when the refresh started running, 0 if it never did
+     */
+    public void record(String adminAddress, boolean isLocal, long submittedNanos, long startedNanos,
+                       long endNanos, Outcome outcome) {
+        (isLocal ? local : remote).record(endNanos - submittedNanos);
+        RouterLatency router = routers.get(adminAddress);
+        if (router == null) {
+            if (!isRouter.test(adminAddress)) {
+                return;
+            }
+            router = routers.computeIfAbsent(adminAddress, a -> new RouterLatency(a, isLocal));
+            // removed meanwhile: its remove() either comes next or missed this entry
+            if (!isRouter.test(adminAddress)) {
+                routers.remove(adminAddress, router);
+                return;
+            }
+        }
+        router.record(submittedNanos, startedNanos, endNanos, outcome);
+    }
+
+    public void remove(String adminAddress) {
+        routers.remove(adminAddress);
+    }
+
+    /**
+     * @return null if the router wasn't refreshed yet
+     */
+    public RouterStats getStats(String adminAddress) {
+        RouterLatency router = routers.get(adminAddress);
+        return router == null ? null : router.stats();
+    }
+
+    public Histogram.Snapshot getLocalLatency() {
+        return local.snapshot();
+    }
+
+    public Histogram.Snapshot getRemoteLatency() {
+        return remote.snapshot();
+    }
+
+    /**
+     * @return routers with the highest p99 latency first
+     */
+    public List<RouterStats> getSlowRouters(int limit) {
+        List<RouterStats> stats = new ArrayList<>(routers.size());
+        for (RouterLatency router : routers.values()) {
+            stats.add(router.stats());
+        }
+        stats.sort(Comparator.comparingLong(RouterStats::getP99).reversed());
+        return stats.size() > limit ? new ArrayList<>(stats.subList(0, limit)) : stats;
+    }
+
+    public String getSlowRouterReport(int limit) {
+        StringBuilder report = new StringBuilder()
+                .append("local[").append(getLocalLatency()).append("]\n")
+                .append("remote[").append(getRemoteLatency()).append("]\n");
+        for (RouterStats stats : getSlowRouters(limit)) {
+            report.append(stats).append('\n');
+        }
+        return report.toString();
+    }
+
+    private static class RouterLatency {
+        private final String adminAddress;
+        private final boolean local;
+        private final Histogram latency = new Histogram();
+        private final AtomicLong queueNanos = new AtomicLong();
+        private final AtomicLongArray outcomes = new AtomicLongArray(Outcome.values().length);
+
+        // last refresh, refreshes of one router rarely overlap
+        private volatile long lastSubmittedNanos;
+        private volatile long lastStartedNanos;
+        private volatile long lastEndNanos;
+        private volatile Outcome lastOutcome;
+
+        RouterLatency(String adminAddress, boolean local) {
+            this.adminAddress = adminAddress;
+            this.local = local;
+        }
+
+        void record(long submittedNanos, long startedNanos, long endNanos, Outcome outcome) {
+            latency.record(endNanos - submittedNanos);
+            queueNanos.addAndGet((startedNanos == 0 ? endNanos : startedNanos) - submittedNanos);
+            outcomes.incrementAndGet(outcome.ordinal());
+            lastSubmittedNanos = submittedNanos;
+            lastStartedNanos = startedNanos;
+            lastEndNanos = endNanos;
+            lastOutcome = outcome;
+        }
+
+        RouterStats stats() {
+            Histogram.Snapshot snapshot = latency.snapshot();
+            long[] counts = new long[outcomes.length()];
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] = outcomes.get(i);
+            }
+            return new RouterStats(adminAddress, local, snapshot, queueNanos.get(), counts,
+                    lastSubmittedNanos, lastStartedNanos, lastEndNanos, lastOutcome);
+        }
+    }
+
+    public static class RouterStats {
+        private final String adminAddress;
+        private final boolean local;
+        private final Histogram.Snapshot latency;
+        private final long queueNanos;
+        private final long[] outcomes;
+        private final long lastSubmittedNanos;
+        private final long lastStartedNanos;
+        private final long lastEndNanos;
+        private final Outcome lastOutcome;
+
+        RouterStats(String adminAddress, boolean local, Histogram.Snapshot latency, long queueNanos,
+                    long[] outcomes, long lastSubmittedNanos, long lastStartedNanos, long lastEndNanos,
+                    Outcome lastOutcome) {
+            this.adminAddress = adminAddress;
+            this.local = local;
+            this.latency = latency;
+            this.queueNanos = queueNanos;
+            this.outcomes = outcomes;
+            this.lastSubmittedNanos = lastSubmittedNanos;
+            this.lastStartedNanos = lastStartedNanos;
+            this.lastEndNanos = lastEndNanos;
+            this.lastOutcome = lastOutcome;
+        }
+
+        public String getAdminAddress() {
+            return adminAddress;
+        }
+
+        public boolean isLocal() {
+            return local;
+        }
+
+        /**
+         * Nanoseconds from submission to outcome.
+         */
+        public Histogram.Snapshot getLatency() {
+            return latency;
+        }
+
+        public long getP99() {
+            return latency.getValueAt(0.99);
+        }
+
+        /**
+         * Average nanoseconds waited for a refresh thread.
+         */
+        public double getMeanQueueNanos() {
+            return latency.getCount() == 0 ? 0 : (double) queueNanos / latency.getCount();
+        }
+
+        public long getCount(Outcome outcome) {
+            return outcomes[outcome.ordinal()];
+        }
+
+        /**
+         * System.nanoTime() of the last refresh when submitted, 0 for none.
+         */
+        public long getLastSubmittedNanos() {
+            return lastSubmittedNanos;
+        }
+
+        /**
+         * 0 if the last refresh timed out or was cancelled before it started.
+         */
+        public long getLastStartedNanos() {
+            return lastStartedNanos;
+        }
+
+        public long getLastEndNanos() {
+            return lastEndNanos;
+        }
+
+        public Outcome getLastOutcome() {
+            return lastOutcome;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder result = new StringBuilder(adminAddress)
+                    .append(local ? " local " : " remote ")
+                    .append(latency)
+                    .append(String.format(",queueMean=%.0f", getMeanQueueNanos()));
+            for (Outcome outcome : Outcome.values()) {
+                long count = getCount(outcome);
+                if (count > 0) {
+                    result.append(',').append(outcome.name().toLowerCase()).append('=').append(count);
+                }
+            }
+            return result.append(",last=").append(lastOutcome).toString();
+        }
+    }
+}
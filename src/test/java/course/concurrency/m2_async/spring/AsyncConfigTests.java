@@ -0,0 +1,139 @@
+package course.concurrency.m2_async.spring;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.beans.factory.BeanCreationException;
+import org.springframework.context.annotation.AnnotationConfigApplicationContext;
+import org.springframework.core.env.MapPropertySource;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AsyncConfigTests {
+
+    private AnnotationConfigApplicationContext context;
+
+    private AnnotationConfigApplicationContext start(Map<String, Object> properties) {
+        long start = System.currentTimeMillis();
+        context = new AnnotationConfigApplicationContext();
+        context.getEnvironment().getPropertySources()
+                .addFirst(new MapPropertySource("test", properties));
+        context.register(AsyncConfig.class, AsyncClassTest.class);
+        context.refresh();
+        System.out.println("Startup time: " + (System.currentTimeMillis() - start));
+        return context;
+    }
+
+    @AfterEach
+    public void tearDown() {
+        if (context != null) {
+            context.close();
+        }
+    }
+
+    @Test
+    public void internalCallShouldBeAsync() {
+        AsyncClassTest testClass = start(Map.of()).getBean(AsyncClassTest.class);
+
+        String threadName = testClass.runAsyncTask().join();
+
+        assertTrue(threadName.startsWith("async-"), "internalTask executed on " + threadName);
+    }
+
+    @Test
+    public void throughput() {
+        AsyncClassTest testClass = start(Map.of()).getBean(AsyncClassTest.class);
+        AsyncExecutorMetrics metrics = context.getBean(AsyncExecutorMetrics.class);
+        int tasks = 5_000;
+
+        long start = System.currentTimeMillis();
+        List<CompletableFuture<String>> results = new ArrayList<>();
+        for (int i = 0; i < tasks; i++) {
+            results.add(testClass.internalTask());
+        }
+        CompletableFuture.allOf(results.toArray(new CompletableFuture<?>[0])).join();
+        long end = System.currentTimeMillis();
+
+        System.out.println("Execution time: " + (end - start) + ", " + metrics);
+        awaitCompleted(metrics, tasks);
+        assertEquals(0, metrics.getRejected());
+    }
+
+    @Test
+    public void shouldCountRejections() throws InterruptedException {
+        start(Map.of("async.executor.core-size", 1,
+                "async.executor.max-size", 1,
+                "async.executor.queue-capacity", 1));
+        AsyncConfig config = context.getBean(AsyncConfig.class);
+        AsyncExecutorMetrics metrics = context.getBean(AsyncExecutorMetrics.class);
+        CountDownLatch latch = new CountDownLatch(1);
+
+        Runnable blocked = () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException ignored) {}
+        };
+        config.getAsyncExecutor().execute(blocked);
+        config.getAsyncExecutor().execute(blocked);
+        assertThrows(RejectedExecutionException.class,
+                () -> config.getAsyncExecutor().execute(blocked));
+
+        assertEquals(1, metrics.getRejected());
+        assertEquals(1, metrics.getQueueDepth());
+        latch.countDown();
+    }
+
+    @Test
+    public void shouldRejectUnknownExecutorType() {
+        Exception e = assertThrows(BeanCreationException.class,
+                () -> start(Map.of("async.executor.type", "bonded")));
+
+        assertEquals("Unknown async.executor.type 'bonded', expected bounded or virtual",
+                cause(e, IllegalStateException.class).getMessage());
+    }
+
+    @Test
+    public void shouldRunOnVirtualThreads() throws Exception {
+        Map<String, Object> properties = Map.of("async.executor.type", "virtual");
+        if (Runtime.version().feature() < 21) {
+            Exception e = assertThrows(BeanCreationException.class, () -> start(properties));
+            assertEquals("Virtual threads are not supported by this JDK",
+                    cause(e, IllegalStateException.class).getMessage());
+            return;
+        }
+        start(properties);
+        AsyncConfig config = context.getBean(AsyncConfig.class);
+        AsyncExecutorMetrics metrics = context.getBean(AsyncExecutorMetrics.class);
+
+        CompletableFuture<Thread> thread = new CompletableFuture<>();
+        config.getAsyncExecutor().execute(() -> thread.complete(Thread.currentThread()));
+
+        // Thread.isVirtual() is JDK 21 API, the course is compiled for 17
+        assertEquals(true, Thread.class.getMethod("isVirtual").invoke(thread.get(5, TimeUnit.SECONDS)));
+        awaitCompleted(metrics, 1);
+    }
+
+    // the decorator counts a task after it returns, which may be after its future completed
+    private static void awaitCompleted(AsyncExecutorMetrics metrics, long tasks) {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (metrics.getCompleted() < tasks && System.nanoTime() < deadline) {
+            Thread.onSpinWait();
+        }
+        assertEquals(tasks, metrics.getCompleted());
+    }
+
+    private static Throwable cause(Throwable e, Class<? extends Throwable> type) {
+        while (e != null && !type.isInstance(e)) {
+            e = e.getCause();
+        }
+        assertNotNull(e, "No " + type.getSimpleName() + " in the cause chain");
+        return e;
+    }
+}
@@ -0,0 +1,54 @@
+package course.concurrency.m2_async.spring;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Starts SpringBootAsyncTest in a fresh JVM several times for every mode
+ * and prints the StartupReport lines: startup time and memory at ready.
+ */
+public class SpringBootStartupBenchmark {
+
+    private static final int RUNS = 5;
+
+    public static void main(String[] args) throws Exception {
+        measure("default");
+        measure("fast-startup");
+    }
+
+    private static void measure(String profile) throws IOException, InterruptedException {
+        List<String> reports = new ArrayList<>();
+        for (int i = 0; i < RUNS; i++) {
+            reports.add(startOnce(profile));
+        }
+        System.out.println(profile + ":");
+        reports.forEach(r -> System.out.println("  " + r));
+    }
+
+    private static String startOnce(String profile) throws IOException, InterruptedException {
+        String java = Paths.get(System.getProperty("java.home"), "bin", "java").toString();
+        Process process = new ProcessBuilder(java,
+                "-cp", System.getProperty("java.class.path"),
+                SpringBootAsyncTest.class.getName(),
+                "--spring.profiles.active=" + profile)
+                .redirectErrorStream(true)
+                .start();
+        try (BufferedReader out = new BufferedReader(new InputStreamReader(process.getInputStream()))) {
+            String line;
+            while ((line = out.readLine()) != null) {
+                if (line.startsWith(StartupReport.PREFIX)) {
+                    return line.substring(StartupReport.PREFIX.length());
+                }
+            }
+            return "no report";
+        } finally {
+            // the application keeps running after start
+            process.destroy();
+            process.waitFor();
+        }
+    }
+}
@@ -1,27 +1,21 @@
 package course.concurrency.m3_shared.auction;
 
-import java.util.ArrayList;
-import java.util.List;
-import java.util.LongSummaryStatistics;
-import java.util.concurrent.ConcurrentHashMap;
-
-import static java.util.stream.Collectors.summarizingLong;
+import course.concurrency.m3_shared.metrics.Histogram;
+import course.concurrency.m3_shared.metrics.Metrics;
 
 public class ExecutionStatistics {
 
-    private ConcurrentHashMap<String, List<Long>> stat = new ConcurrentHashMap<>();
+    private final Metrics stat = new Metrics();
 
     public void addData(String method, Long duration) {
-        stat.putIfAbsent(method, new ArrayList<>());
-        stat.get(method).add(duration);
+        stat.histogram(method).record(duration);
     }
 
     public void printStatistics() {
-        stat.forEach((k,v) -> System.out.println(k + ": " + listToStat(v)));
+        stat.snapshot().getHistograms().forEach((k, v) -> System.out.println(k + ": " + toStat(v)));
     }
 
-    private String listToStat(List<Long> values) {
-        LongSummaryStatistics stat = values.stream().collect(summarizingLong(Long::valueOf));
-        return String.format("%.0f (%d-%d)", stat.getAverage(), stat.getMin(), stat.getMax());
+    private String toStat(Histogram.Snapshot values) {
+        return String.format("%.0f (%d-%d)", values.getMean(), values.getMin(), values.getMax());
     }
 }
@@ -0,0 +1,112 @@
+package course.concurrency.m3_shared.collections;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static java.util.stream.Collectors.toSet;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class HeavyHittersTests {
+
+    private static final int poolSize = Runtime.getRuntime().availableProcessors() * 2;
+
+    @Test
+    public void shouldFindHeavyHittersAmongManyNames() throws InterruptedException {
+        HeavyHitters heavyHitters = new HeavyHitters(10, 5);
+        int iterations = 200_000;
+        CountDownLatch latch = new CountDownLatch(1);
+        ExecutorService executor = Executors.newFixedThreadPool(poolSize);
+
+        for (int i = 0; i < poolSize; i++) {
+            executor.submit(() -> {
+                try {
+                    latch.await();
+                } catch (InterruptedException ignored) {}
+
+                for (int it = 0; it < iterations; it++) {
+                    // every 4th lookup is one of 10 popular names, others are almost unique
+                    if (it % 4 == 0) {
+                        heavyHitters.add("popular" + (it / 4) % 10);
+                    } else {
+                        heavyHitters.add("rare" + ThreadLocalRandom.current().nextInt(1_000_000));
+                    }
+                }
+            });
+        }
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(30, TimeUnit.SECONDS);
+
+        List<Map.Entry<String, Long>> top = heavyHitters.top(10);
+        Set<String> names = top.stream().map(Map.Entry::getKey).collect(toSet());
+        long expected = (long) poolSize * iterations / 40;
+
+        assertEquals(10, top.size());
+        for (int i = 0; i < 10; i++) {
+            assertTrue(names.contains("popular" + i), "popular" + i + " is missed: " + top);
+        }
+        for (Map.Entry<String, Long> entry : top) {
+            assertTrue(entry.getValue() >= expected, "Count-Min estimate can't be lower than real count");
+        }
+    }
+
+    @Test
+    public void shouldForgetExpiredBuckets() {
+        AtomicLong time = new AtomicLong();
+        HeavyHitters heavyHitters = new HeavyHitters(2, 3, 1000, 256, time::get);
+
+        for (int i = 0; i < 100; i++) {
+            heavyHitters.add("A");
+        }
+        time.addAndGet(1000);
+        for (int i = 0; i < 10; i++) {
+            heavyHitters.add("B");
+        }
+
+        assertEquals(List.of(Map.entry("A", 100L), Map.entry("B", 10L)), heavyHitters.top(2));
+        assertEquals(List.of(Map.entry("B", 10L)), heavyHitters.top(2, 1));
+
+        time.addAndGet(2000);
+        assertEquals(List.of(Map.entry("B", 10L)), heavyHitters.top(2));
+
+        time.addAndGet(1000);
+        assertTrue(heavyHitters.top(2).isEmpty());
+    }
+
+    @Test
+    public void shouldTellApartNamesWithSameHashCode() {
+        HeavyHitters heavyHitters = new HeavyHitters(2, 1, 1000, 256, () -> 0);
+        assertEquals("Aa".hashCode(), "BB".hashCode());
+
+        for (int i = 0; i < 100; i++) {
+            heavyHitters.add("Aa");
+        }
+        heavyHitters.add("BB");
+
+        assertEquals(List.of(Map.entry("Aa", 100L), Map.entry("BB", 1L)), heavyHitters.top(2));
+    }
+
+    @Test
+    public void serviceShouldPrintTopRestaurants() {
+        RestaurantService service = new RestaurantService(2, 5);
+
+        for (int i = 0; i < 5; i++) {
+            service.getByName("A");
+        }
+        for (int i = 0; i < 3; i++) {
+            service.getByName("B");
+        }
+        service.getByName("C");
+
+        assertEquals(Set.of("A - 5", "B - 3"), service.printStat());
+    }
+}
@@ -0,0 +1,110 @@
+package course.concurrency.m3_shared.collections;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
+import static java.util.stream.Collectors.toUnmodifiableMap;
+
+/**
+ * Lookups in the ConcurrentHashMap catalogue vs immutable snapshots published
+ * through a volatile reference (RestaurantCatalogue and the JDK immutable map),
+ * with and without reloads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class RestaurantCatalogueBenchmarks {
+
+    public static final int READERS = 4;
+
+    @Param({"1000", "100000"})
+    private int size;
+
+    private String[] names;
+    private List<Restaurant> restaurants;
+
+    private final Map<String, Restaurant> concurrentMap = new ConcurrentHashMap<>();
+    private volatile Map<String, Restaurant> immutableMap;
+    private volatile RestaurantCatalogue catalogue;
+
+    @Setup
+    public void setup() {
+        restaurants = IntStream.range(0, size).mapToObj(i -> new Restaurant("R" + i)).collect(toList());
+        names = restaurants.stream().map(Restaurant::getName).toArray(String[]::new);
+        restaurants.forEach(r -> concurrentMap.put(r.getName(), r));
+        immutableMap = restaurants.stream().collect(toUnmodifiableMap(Restaurant::getName, r -> r));
+        catalogue = new RestaurantCatalogue(restaurants);
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RestaurantCatalogueBenchmarks.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+
+        new Runner(options).run();
+    }
+
+    private String randomName() {
+        return names[ThreadLocalRandom.current().nextInt(names.length)];
+    }
+
+    @Benchmark
+    @Threads(READERS)
+    public Restaurant concurrentHashMap() {
+        return concurrentMap.get(randomName());
+    }
+
+    @Benchmark
+    @Threads(READERS)
+    public Restaurant immutableMap() {
+        return immutableMap.get(randomName());
+    }
+
+    @Benchmark
+    @Threads(READERS)
+    public Restaurant catalogue() {
+        return catalogue.get(randomName());
+    }
+
+    @Benchmark
+    @Group("concurrentHashMap_reload")
+    @GroupThreads(READERS)
+    public Restaurant readConcurrentHashMapDuringReload() {
+        return concurrentMap.get(randomName());
+    }
+
+    @Benchmark
+    @Group("concurrentHashMap_reload")
+    @GroupThreads(1)
+    public void reloadConcurrentHashMap() {
+        restaurants.forEach(r -> concurrentMap.put(r.getName(), r));
+    }
+
+    @Benchmark
+    @Group("catalogue_reload")
+    @GroupThreads(READERS)
+    public Restaurant readCatalogueDuringReload() {
+        return catalogue.get(randomName());
+    }
+
+    @Benchmark
+    @Group("catalogue_reload")
+    @GroupThreads(1)
+    public void reloadCatalogue() {
+        catalogue = new RestaurantCatalogue(restaurants);
+    }
+}
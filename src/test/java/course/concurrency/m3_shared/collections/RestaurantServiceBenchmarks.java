@@ -0,0 +1,59 @@
+package course.concurrency.m3_shared.collections;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Threads(Threads.MAX)
+public class RestaurantServiceBenchmarks {
+
+    private static final String[] NAMES = {"A", "B", "C"};
+
+    private final RestaurantService service = new RestaurantService();
+
+    private final Map<String, Long> synchronizedStat = Collections.synchronizedMap(new HashMap<>());
+    private final ConcurrentHashMap<String, AtomicLong> atomicStat = new ConcurrentHashMap<>();
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(RestaurantServiceBenchmarks.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+
+        new Runner(options).run();
+    }
+
+    private static String randomName() {
+        return NAMES[ThreadLocalRandom.current().nextInt(NAMES.length)];
+    }
+
+    @Benchmark
+    public void longAdder() {
+        service.addToStat(randomName());
+    }
+
+    @Benchmark
+    public void synchronizedMap() {
+        synchronizedStat.merge(randomName(), 1L, Long::sum);
+    }
+
+    @Benchmark
+    public long atomicLong() {
+        return atomicStat.computeIfAbsent(randomName(), k -> new AtomicLong()).incrementAndGet();
+    }
+}
@@ -2,16 +2,24 @@ package course.concurrency.m3_shared.collections;
 
 import course.concurrency.m3_shared.auction.ExecutionStatistics;
 import org.junit.jupiter.api.AfterAll;
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
 
+import java.util.List;
 import java.util.Set;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+import static java.util.stream.Collectors.toList;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 
 public class RestaurantServiceTests {
@@ -31,6 +39,12 @@ public class RestaurantServiceTests {
         service = new RestaurantService();
     }
 
+    // the reload test doesn't use the pool, and a failed test may leave it running
+    @AfterEach
+    public void tearDown() {
+        executor.shutdownNow();
+    }
+
     @AfterAll
     public static void printStat() {
         stat.printStatistics();
@@ -69,4 +83,17 @@ public class RestaurantServiceTests {
 
         stat.addData("service",end - start);
     }
+
+    @Test
+    public void shouldReloadCatalogue() {
+        List<Restaurant> restaurants = IntStream.range(0, 1000)
+                .mapToObj(i -> new Restaurant("R" + i)).collect(toList());
+
+        service.reload(restaurants);
+
+        assertNull(service.getByName("A"));
+        for (Restaurant restaurant : restaurants) {
+            assertSame(restaurant, service.getByName(restaurant.getName()));
+        }
+    }
 }
@@ -0,0 +1,146 @@
+package course.concurrency.m3_shared.immutable;
+
+import org.junit.jupiter.api.RepeatedTest;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeliveryPipelineTests {
+
+    private List<Item> items = List.of(new Item(), new Item());
+
+    @RepeatedTest(5)
+    public void shouldDeliverEveryOrderOnce() throws InterruptedException {
+        int iterations = 10_000;
+        OrderService service = new OrderService(2, 1000, 64);
+        ExecutorService executor = Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors() * 2);
+
+        List<Long> ids = new ArrayList<>();
+        for (int i = 0; i < iterations; i++) {
+            ids.add(service.createOrder(items));
+        }
+        for (Long id : ids) {
+            executor.submit(() -> service.setPacked(id));
+            executor.submit(() -> service.updatePaymentInfo(id, new PaymentInfo()));
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+        service.shutdown();
+
+        DeliveryPipeline pipeline = service.getDeliveryPipeline();
+        System.out.println(pipeline);
+        for (Long id : ids) {
+            assertTrue(service.isDelivered(id), String.format("Order %d is not completed", id));
+        }
+        assertEquals(iterations, pipeline.getDelivered());
+        assertTrue(pipeline.getMaxBatchSize() <= 64);
+        assertEquals(0, pipeline.getQueueSize());
+    }
+
+    @Test
+    public void shouldNotQueueOrderTwice() throws InterruptedException {
+        CountDownLatch deliveryStarted = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        AtomicInteger delivered = new AtomicInteger();
+        DeliveryPipeline pipeline = new DeliveryPipeline(1, 10, 10, orders -> {
+            deliveryStarted.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException ignored) {}
+            delivered.addAndGet(orders.size());
+        });
+        Order order = new Order(items).withId(1L);
+
+        assertTrue(pipeline.submit(order));
+        deliveryStarted.await();
+        assertFalse(pipeline.submit(order));
+        release.countDown();
+        pipeline.shutdown();
+
+        assertEquals(1, delivered.get());
+        assertEquals(1, pipeline.getBatches());
+    }
+
+    @RepeatedTest(5)
+    public void shouldDeliverOrdersAcceptedDuringShutdown() throws Exception {
+        Set<Long> delivered = ConcurrentHashMap.newKeySet();
+        DeliveryPipeline pipeline = new DeliveryPipeline(2, 4, 4,
+                orders -> orders.forEach(order -> delivered.add(order.getId())));
+        Set<Long> accepted = ConcurrentHashMap.newKeySet();
+
+        ExecutorService producers = Executors.newFixedThreadPool(4);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int p = 0; p < 4; p++) {
+                long first = p * 1_000_000L;
+                futures.add(producers.submit(() -> {
+                    for (long id = first; ; id++) {
+                        try {
+                            if (pipeline.submit(new Order(items).withId(id))) {
+                                accepted.add(id);
+                            }
+                        } catch (RejectedExecutionException e) {
+                            return null;
+                        }
+                    }
+                }));
+            }
+            Thread.sleep(20);
+            assertTrue(pipeline.shutdown());
+            for (Future<?> future : futures) {
+                future.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            producers.shutdownNow();
+        }
+
+        assertFalse(accepted.isEmpty());
+        assertEquals(accepted, delivered);
+    }
+
+    @Test
+    public void shouldHandFailedBatchesToFailureHandler() throws InterruptedException {
+        DeliveryPipeline pipeline = new DeliveryPipeline(1, 10, 10, orders -> {
+            throw new IllegalStateException("courier is unavailable");
+        });
+        List<Order> failed = new CopyOnWriteArrayList<>();
+        pipeline.setFailureHandler((orders, e) -> failed.addAll(orders));
+        Order order = new Order(items).withId(1L);
+
+        assertTrue(pipeline.submit(order));
+        assertTrue(pipeline.shutdown());
+
+        assertEquals(List.of(order), failed);
+        assertEquals(1, pipeline.getFailed());
+        assertEquals(0, pipeline.getDelivered());
+    }
+
+    @Test
+    public void shouldCountFailedBatchesWithoutRetrying() throws InterruptedException {
+        AtomicInteger attempts = new AtomicInteger();
+        DeliveryPipeline pipeline = new DeliveryPipeline(1, 10, 10, orders -> {
+            attempts.incrementAndGet();
+            throw new IllegalStateException("courier is unavailable");
+        });
+        Order order = new Order(items).withId(1L);
+
+        assertTrue(pipeline.submit(order));
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (pipeline.getFailed() == 0) {
+            assertTrue(System.currentTimeMillis() < deadline, pipeline.toString());
+            Thread.sleep(5);
+        }
+        // not in flight anymore, so it may be submitted again
+        assertTrue(pipeline.submit(order));
+        assertTrue(pipeline.shutdown());
+
+        assertEquals(2, pipeline.getFailed());
+        assertEquals(2, attempts.get());
+    }
+}
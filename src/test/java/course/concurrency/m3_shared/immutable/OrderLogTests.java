@@ -0,0 +1,155 @@
+package course.concurrency.m3_shared.immutable;
+
+import course.concurrency.m3_shared.immutable.OrderLog.EventType;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static java.nio.file.StandardOpenOption.WRITE;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderLogTests {
+
+    private List<Item> items = List.of(new Item(), new Item());
+
+    @TempDir
+    Path dir;
+
+    @Test
+    public void shouldRestoreOrdersAfterRestart() throws InterruptedException {
+        Path file = dir.resolve("orders.log");
+        OrderService service = OrderService.recover(new OrderLog(file));
+        long delivered = service.createOrder(items);
+        service.setPacked(delivered);
+        service.updatePaymentInfo(delivered, new PaymentInfo());
+        long paid = service.createOrder(items);
+        service.updatePaymentInfo(paid, new PaymentInfo());
+        long created = service.createOrder(items);
+        service.shutdown();
+
+        OrderService restored = OrderService.recover(new OrderLog(file));
+        assertTrue(restored.isDelivered(delivered));
+        assertFalse(restored.isDelivered(paid));
+        assertFalse(restored.isDelivered(created));
+        assertEquals(items.size(), restored.getOrderStore().get(created).getItems().size());
+        assertEquals(created + 1, restored.createOrder(items), "Ids must not be reused");
+
+        restored.setPacked(paid);
+        assertTrue(restored.isDelivered(paid));
+        restored.shutdown();
+    }
+
+    @Test
+    public void shouldDeliverOrdersCompletedBeforeCrash() throws Exception {
+        Path file = dir.resolve("orders.log");
+        try (OrderLog log = new OrderLog(file)) {
+            log.sync(log.append(EventType.CREATED, 0, 1),
+                    log.append(EventType.PACKED, 0, 0),
+                    log.append(EventType.PAYMENT, 0, 0));
+        }
+
+        OrderService restored = OrderService.recover(new OrderLog(file));
+        assertTrue(restored.isDelivered(0));
+        restored.shutdown();
+    }
+
+    @Test
+    public void shouldSkipUnfinishedRecords() throws Exception {
+        Path file = dir.resolve("orders.log");
+        try (OrderLog log = new OrderLog(file, 32)) {
+            for (int i = 0; i < 5; i++) {
+                log.sync(log.append(EventType.CREATED, i, 1));
+            }
+        }
+        // a writer reserved the third record and crashed before writing it
+        try (FileChannel channel = FileChannel.open(file, WRITE)) {
+            channel.write(ByteBuffer.allocate(16), 2 * 16);
+        }
+
+        List<Long> ids = new ArrayList<>();
+        try (OrderLog log = new OrderLog(file, 32)) {
+            log.replay((type, orderId, value) -> ids.add(orderId));
+            assertEquals(5 * 16, log.size());
+        }
+        assertEquals(List.of(0L, 1L, 3L, 4L), ids);
+    }
+
+    @Test
+    public void shouldPersistConcurrentUpdates() throws Exception {
+        Path file = dir.resolve("orders.log");
+        int threads = 8;
+        int ordersPerThread = 200;
+        // small segments, so appends cross segment borders
+        OrderService service = OrderService.recover(new OrderLog(file, 1024), 2, 64, 16);
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                for (int i = 0; i < ordersPerThread; i++) {
+                    long id = service.createOrder(items);
+                    service.updatePaymentInfo(id, new PaymentInfo());
+                    service.setPacked(id);
+                }
+            });
+        }
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(1, TimeUnit.MINUTES));
+        service.shutdown();
+
+        OrderService restored = OrderService.recover(new OrderLog(file, 1024));
+        for (long id = 0; id < threads * ordersPerThread; id++) {
+            assertTrue(restored.isDelivered(id), "Order " + id);
+        }
+        restored.shutdown();
+    }
+
+    @Test
+    public void shouldKeepStateAfterCompaction() throws Exception {
+        Path file = dir.resolve("orders.log");
+        OrderService service = OrderService.recover(new OrderLog(file, 1024));
+        int orders = 300;
+        for (int i = 0; i < orders; i++) {
+            long id = service.createOrder(items);
+            // a few gaps in the delivered ranges
+            if (i % 100 != 50) {
+                service.setPacked(id);
+                service.updatePaymentInfo(id, new PaymentInfo());
+            }
+        }
+        long paid = service.createOrder(items);
+        service.updatePaymentInfo(paid, new PaymentInfo());
+        service.shutdown();
+
+        OrderLog.compact(file, 1024);
+        // a compacted log stays as it is
+        OrderLog.compact(file, 1024);
+
+        List<EventType> events = new ArrayList<>();
+        try (OrderLog log = new OrderLog(file, 1024)) {
+            log.replay((type, orderId, value) -> events.add(type));
+        }
+        // ranges 0-49, 51-149, 151-249, 251-299, then the undelivered orders
+        assertEquals(4, events.stream().filter(type -> type == EventType.ARCHIVED).count());
+        assertEquals(4 + 3 + 2, events.size());
+
+        OrderService restored = OrderService.recover(new OrderLog(file, 1024));
+        for (long id = 0; id < orders; id++) {
+            assertEquals(id % 100 != 50, restored.isDelivered(id), "Order " + id);
+        }
+        assertFalse(restored.isDelivered(paid));
+        assertEquals(paid + 1, restored.createOrder(items), "Ids must not be reused");
+        restored.setPacked(paid);
+        assertTrue(restored.isDelivered(paid));
+        restored.setPacked(50);
+        restored.updatePaymentInfo(50, new PaymentInfo());
+        assertTrue(restored.isDelivered(50));
+        restored.shutdown();
+    }
+}
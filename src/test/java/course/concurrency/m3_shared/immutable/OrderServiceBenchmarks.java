@@ -0,0 +1,81 @@
+package course.concurrency.m3_shared.immutable;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Full order lifecycle (create, pack, pay, check) from many threads at once.
+ * With the write-ahead log each call waits for a sync, so allThreads shows
+ * how well group commit shares forces between threads.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class OrderServiceBenchmarks {
+
+    private final List<Item> items = List.of(new Item(), new Item());
+    private final PaymentInfo paymentInfo = new PaymentInfo();
+
+    @Param({"memory", "wal"})
+    public String storage;
+
+    private OrderService service;
+    private Path logFile;
+
+    @Setup(Level.Iteration)
+    public void setup() throws IOException {
+        if (storage.equals("wal")) {
+            logFile = Files.createTempFile("orders", ".log");
+            service = OrderService.recover(new OrderLog(logFile));
+        } else {
+            service = new OrderService();
+        }
+    }
+
+    @TearDown(Level.Iteration)
+    public void tearDown() throws InterruptedException, IOException {
+        service.shutdown();
+        if (logFile != null) {
+            Files.delete(logFile);
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(OrderServiceBenchmarks.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @Threads(1)
+    public boolean singleThread() {
+        return lifecycle();
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public boolean allThreads() {
+        return lifecycle();
+    }
+
+    private boolean lifecycle() {
+        long id = service.createOrder(items);
+        service.setPacked(id);
+        service.updatePaymentInfo(id, paymentInfo);
+        return service.isDelivered(id);
+    }
+}
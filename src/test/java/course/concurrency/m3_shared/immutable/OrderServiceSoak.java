@@ -0,0 +1,58 @@
+package course.concurrency.m3_shared.immutable;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Pushes orders through the whole lifecycle and prints heap usage after GC.
+ * With delivered orders archived the heap should stay flat.
+ *
+ * args: [orders, default 100_000_000] [report every, default 10_000_000]
+ */
+public class OrderServiceSoak {
+
+    public static void main(String[] args) throws InterruptedException {
+        long orders = args.length > 0 ? Long.parseLong(args[0]) : 100_000_000L;
+        long reportEvery = args.length > 1 ? Long.parseLong(args[1]) : 10_000_000L;
+        int threads = Runtime.getRuntime().availableProcessors();
+
+        OrderService service = new OrderService();
+        List<Item> items = List.of(new Item(), new Item());
+        PaymentInfo paymentInfo = new PaymentInfo();
+        AtomicLong processed = new AtomicLong();
+
+        report(0, 0);
+        long start = System.currentTimeMillis();
+        ExecutorService executor = Executors.newFixedThreadPool(threads);
+        for (int t = 0; t < threads; t++) {
+            executor.submit(() -> {
+                long done;
+                while ((done = processed.incrementAndGet()) <= orders) {
+                    long id = service.createOrder(items);
+                    service.setPacked(id);
+                    service.updatePaymentInfo(id, paymentInfo);
+                    if (done % reportEvery == 0) {
+                        report(done, System.currentTimeMillis() - start);
+                    }
+                }
+            });
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.DAYS);
+
+        OrderStore store = service.getOrderStore();
+        System.out.println("chunks=" + store.chunks() + ", chunks with active orders=" + store.activeChunks());
+    }
+
+    private static void report(long orders, long millis) {
+        MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+        memory.gc();
+        System.out.printf("orders=%d, time=%dms, heapMb=%d%n",
+                orders, millis, memory.getHeapMemoryUsage().getUsed() / 1024 / 1024);
+    }
+}
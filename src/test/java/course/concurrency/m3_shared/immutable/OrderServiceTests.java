@@ -37,6 +37,18 @@ public class OrderServiceTests {
         assertTrue(isDelivered);
     }
 
+    @Test
+    public void testDeliveryIsNotRevertedByDuplicates() {
+        long orderId = service.createOrder(items);
+        service.setPacked(orderId);
+        service.updatePaymentInfo(orderId, new PaymentInfo());
+        service.setPacked(orderId);
+        service.updatePaymentInfo(orderId, new PaymentInfo());
+
+        boolean isDelivered = service.isDelivered(orderId);
+        assertTrue(isDelivered);
+    }
+
     @Test
     public void testPartialCompleteWithDelivery() {
         long orderId = service.createOrder(items);
@@ -0,0 +1,147 @@
+package course.concurrency.m3_shared.immutable;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class OrderStoreTests {
+
+    private static final int CHUNK_SIZE = 1 << 16;
+
+    private List<Item> items = List.of(new Item(), new Item());
+
+    @Test
+    public void shouldReleaseChunksOfDeliveredOrders() {
+        OrderService service = new OrderService();
+        long undelivered = -1;
+        for (int i = 0; i < CHUNK_SIZE * 3; i++) {
+            long id = service.createOrder(items);
+            service.setPacked(id);
+            if (i == CHUNK_SIZE * 2 + 5) {
+                undelivered = id;
+                continue;
+            }
+            service.updatePaymentInfo(id, new PaymentInfo());
+        }
+
+        OrderStore store = service.getOrderStore();
+        assertEquals(3, store.chunks());
+        assertEquals(1, store.activeChunks(), "Only the chunk with undelivered order keeps its slots");
+        assertTrue(service.isDelivered(0));
+        assertTrue(service.isDelivered(CHUNK_SIZE * 3 - 1));
+        assertFalse(service.isDelivered(undelivered));
+
+        service.updatePaymentInfo(undelivered, new PaymentInfo());
+        assertTrue(service.isDelivered(undelivered));
+        assertEquals(0, store.activeChunks());
+    }
+
+    @Test
+    public void shouldMarkRangesArchived() {
+        OrderStore store = new OrderStore();
+        // unaligned on both ends and across a chunk boundary
+        long from = CHUNK_SIZE - 70;
+        store.markArchived(from, 200);
+
+        assertFalse(store.isArchived(from - 1));
+        for (long id = from; id < from + 200; id++) {
+            assertTrue(store.isArchived(id), "Order " + id);
+        }
+        assertFalse(store.isArchived(from + 200));
+        assertEquals(2, store.chunks());
+
+        // a whole chunk without orders releases its slots
+        store.markArchived(CHUNK_SIZE * 2, CHUNK_SIZE);
+        assertTrue(store.isArchived(CHUNK_SIZE * 3 - 1));
+        assertEquals(3, store.chunks());
+        assertEquals(2, store.activeChunks());
+    }
+
+    @Test
+    public void shouldKeepDeliveredOrdersDuringRetention() {
+        OrderService service = new OrderService();
+        service.setDeliveredRetention(Duration.ofHours(1));
+
+        long id = service.createOrder(items);
+        service.setPacked(id);
+        service.updatePaymentInfo(id, new PaymentInfo());
+
+        OrderStore store = service.getOrderStore();
+        assertNotNull(store.get(id));
+        assertFalse(store.isArchived(id));
+        assertTrue(service.isDelivered(id));
+    }
+
+    @Test
+    public void shouldArchiveAfterRetention() throws InterruptedException {
+        OrderService service = new OrderService();
+        service.setDeliveredRetention(Duration.ofMillis(10));
+
+        long first = service.createOrder(items);
+        service.setPacked(first);
+        service.updatePaymentInfo(first, new PaymentInfo());
+        Thread.sleep(20);
+        long second = service.createOrder(items);
+        service.setPacked(second);
+        service.updatePaymentInfo(second, new PaymentInfo());
+
+        OrderStore store = service.getOrderStore();
+        assertTrue(store.isArchived(first));
+        assertNotNull(store.get(second));
+        assertTrue(service.isDelivered(first));
+        assertTrue(service.isDelivered(second));
+    }
+
+    @Test
+    public void shouldReportDeliveredOrdersWhileArchiving() throws Exception {
+        OrderService service = new OrderService();
+        // later deliveries archive earlier ones while they are being read
+        service.setDeliveredRetention(Duration.ofMillis(1));
+        int orders = 100_000;
+        long[] ids = new long[orders];
+        for (int i = 0; i < orders; i++) {
+            ids[i] = service.createOrder(items);
+            service.setPacked(ids[i]);
+        }
+        AtomicInteger delivered = new AtomicInteger();
+
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        try {
+            Future<?> writer = executor.submit(() -> {
+                for (long id : ids) {
+                    service.updatePaymentInfo(id, new PaymentInfo());
+                    delivered.incrementAndGet();
+                }
+            });
+            Future<?> reader = executor.submit(() -> {
+                while (!writer.isDone()) {
+                    int count = delivered.get();
+                    for (int i = Math.max(0, count - 1000); i < count; i++) {
+                        assertTrue(service.isDelivered(ids[i]), "Order " + ids[i] + " is not delivered");
+                    }
+                }
+            });
+            writer.get();
+            reader.get();
+        } finally {
+            executor.shutdownNow();
+        }
+        assertTrue(service.getOrderStore().isArchived(ids[0]));
+    }
+
+    @Test
+    public void shouldRejectUnknownOrders() {
+        OrderService service = new OrderService();
+        long id = service.createOrder(items);
+
+        assertThrows(IllegalArgumentException.class, () -> service.setPacked(id + 1));
+        assertThrows(IllegalArgumentException.class, () -> service.updatePaymentInfo(-1, new PaymentInfo()));
+    }
+}
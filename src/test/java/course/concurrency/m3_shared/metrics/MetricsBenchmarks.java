@@ -0,0 +1,101 @@
+package course.concurrency.m3_shared.metrics;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Both counters under a write-heavy and a read-heavy mix, the case each one
+ * is for and the case it isn't, plus the cost of a histogram record.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class MetricsBenchmarks {
+
+    private final Counter writeHeavy = Counter.writeHeavy();
+    private final Counter readHeavy = Counter.readHeavy();
+    private final Histogram histogram = new Histogram();
+
+    @State(Scope.Thread)
+    public static class Values {
+        long next;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(MetricsBenchmarks.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @Group("writeHeavy_writes")
+    @GroupThreads(6)
+    public void writeHeavyIncrement() {
+        writeHeavy.increment();
+    }
+
+    @Benchmark
+    @Group("writeHeavy_writes")
+    @GroupThreads(2)
+    public long writeHeavyGet() {
+        return writeHeavy.get();
+    }
+
+    @Benchmark
+    @Group("readHeavy_writes")
+    @GroupThreads(6)
+    public void readHeavyIncrement() {
+        readHeavy.increment();
+    }
+
+    @Benchmark
+    @Group("readHeavy_writes")
+    @GroupThreads(2)
+    public long readHeavyGet() {
+        return readHeavy.get();
+    }
+
+    @Benchmark
+    @Group("writeHeavy_reads")
+    @GroupThreads(2)
+    public void writeHeavyRareIncrement() {
+        writeHeavy.increment();
+    }
+
+    @Benchmark
+    @Group("writeHeavy_reads")
+    @GroupThreads(6)
+    public long writeHeavyFrequentGet() {
+        return writeHeavy.get();
+    }
+
+    @Benchmark
+    @Group("readHeavy_reads")
+    @GroupThreads(2)
+    public void readHeavyRareIncrement() {
+        readHeavy.increment();
+    }
+
+    @Benchmark
+    @Group("readHeavy_reads")
+    @GroupThreads(6)
+    public long readHeavyFrequentGet() {
+        return readHeavy.get();
+    }
+
+    @Benchmark
+    @Threads(4)
+    public void histogramRecord(Values values) {
+        histogram.record(++values.next & 0xFFFF);
+    }
+}
@@ -0,0 +1,131 @@
+package course.concurrency.m3_shared.metrics;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class MetricsTests {
+
+    private static final int THREADS = 8;
+    private static final int ITERATIONS = 100_000;
+
+    private static void concurrently(Runnable action) throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        try {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < THREADS; t++) {
+                futures.add(executor.submit(() -> {
+                    start.await();
+                    for (int i = 0; i < ITERATIONS; i++) {
+                        action.run();
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get(30, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void countersShouldNotLoseIncrements() throws Exception {
+        Counter writeHeavy = Counter.writeHeavy();
+        Counter readHeavy = Counter.readHeavy();
+
+        concurrently(() -> {
+            writeHeavy.increment();
+            readHeavy.add(2);
+        });
+
+        assertEquals(THREADS * ITERATIONS, writeHeavy.get());
+        assertEquals(2L * THREADS * ITERATIONS, readHeavy.snapshot());
+    }
+
+    @Test
+    public void gaugeShouldKeepMax() throws Exception {
+        Gauge max = new Gauge();
+        Gauge level = new Gauge();
+
+        concurrently(() -> {
+            long value = Thread.currentThread().getId() * 1000 + (System.nanoTime() & 511);
+            max.setMax(value);
+            level.add(1);
+            level.add(-1);
+        });
+        max.setMax(-5);
+
+        assertTrue(max.get() > 0);
+        assertEquals(0, level.get());
+        level.set(42);
+        assertEquals(42, level.snapshot());
+    }
+
+    @Test
+    public void histogramShouldCountExactlyAndEstimateQuantiles() throws Exception {
+        Histogram histogram = new Histogram();
+        concurrently(() -> histogram.record(1000));
+        for (int i = 1; i <= 100; i++) {
+            histogram.record(i * 10_000L);
+        }
+
+        Histogram.Snapshot snapshot = histogram.snapshot();
+        assertEquals(THREADS * ITERATIONS + 100, snapshot.getCount());
+        assertEquals(1000, snapshot.getMin());
+        assertEquals(1_000_000, snapshot.getMax());
+        assertEquals(1000L * THREADS * ITERATIONS + 50_500_000, snapshot.getSum());
+        assertTrue(snapshot.getValueAt(0.5) >= 1000 && snapshot.getValueAt(0.5) <= 1125);
+        assertEquals(1_000_000, snapshot.getValueAt(1));
+    }
+
+    @Test
+    public void histogramBucketsShouldBoundValues() {
+        long[] values = {0, 1, 7, 8, 9, 1000, 123_456_789, Long.MAX_VALUE};
+        for (long value : values) {
+            long upper = Histogram.upperBound(Histogram.index(value));
+            assertTrue(upper >= value, value + " above its bucket " + upper);
+            assertTrue(upper - value <= value / 8, value + " in a bucket up to " + upper);
+        }
+        Histogram.Snapshot empty = new Histogram().snapshot();
+        assertEquals(0, empty.getMin());
+        assertEquals(0, empty.getValueAt(0.99));
+    }
+
+    @Test
+    public void registryShouldReturnSameMetricByName() {
+        Metrics metrics = new Metrics();
+        metrics.counter("orders").increment();
+        metrics.counter("orders").add(2);
+        metrics.gauge("queue").set(5);
+        metrics.histogram("lag").record(100);
+
+        assertSame(metrics.counter("orders"), metrics.counter("orders"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.histogram("orders"));
+        assertThrows(IllegalArgumentException.class, () -> metrics.gauge("lag"));
+
+        Metrics.Snapshot snapshot = metrics.snapshot();
+        metrics.counter("orders").increment();
+        metrics.counter("bids").increment();
+
+        // the snapshot doesn't see later updates
+        assertEquals(Map.of("orders", 3L), snapshot.getCounters());
+        assertEquals(0, snapshot.getCounter("bids"));
+        assertEquals(Map.of("queue", 5L), snapshot.getGauges());
+        assertEquals(1, snapshot.getHistograms().get("lag").getCount());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.getCounters().put("x", 1L));
+        assertEquals(4, metrics.snapshot().getCounter("orders"));
+    }
+}
@@ -0,0 +1,79 @@
+package course.concurrency.m6_streams;
+
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Convergence of the adaptive pool size under CPU-only, I/O-only and mixed
+ * load, like LoadGenerator's compute() and sleep(). The pool always has
+ * a backlog, so its size is the only limit on throughput.
+ */
+public class AdaptiveExecutorBenchmark {
+
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();
+    private static final long RUN_MILLIS = 4000;
+    private static final long REPORT_MILLIS = 250;
+
+    public static void main(String[] args) throws InterruptedException {
+        System.out.println("cpus=" + Runtime.getRuntime().availableProcessors());
+        run("cpu", () -> compute(5));
+        run("io", () -> sleep(20));
+        run("mixed", () -> {
+            compute(2);
+            sleep(10);
+        });
+    }
+
+    private static void run(String profile, Runnable work) throws InterruptedException {
+        AdaptiveExecutor executor = new AdaptiveExecutor(1, 64, Duration.ofMillis(100));
+        LongAdder done = new LongAdder();
+        long start = System.currentTimeMillis();
+        long nextReport = start;
+        long doneAtReport = 0;
+        StringBuilder sizes = new StringBuilder();
+        while (System.currentTimeMillis() - start < RUN_MILLIS) {
+            while (executor.getQueue().size() < executor.getCorePoolSize() * 2) {
+                executor.execute(() -> {
+                    work.run();
+                    done.increment();
+                });
+            }
+            long now = System.currentTimeMillis();
+            if (now >= nextReport) {
+                sizes.append(executor.getCorePoolSize()).append(' ');
+                nextReport += REPORT_MILLIS;
+            }
+            if (now - start >= RUN_MILLIS - 1000 && doneAtReport == 0) {
+                doneAtReport = done.sum();
+            }
+            Thread.sleep(5);
+        }
+        System.out.printf("%-6s sizes: %s%n       final %s, tasks/s in last second=%d%n",
+                profile, sizes, executor, done.sum() - doneAtReport);
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    // burns CPU time, not wall time, so contention doesn't shorten the work
+    static void compute(long millis) {
+        long start = THREADS.getCurrentThreadCpuTime();
+        if (start < 0) {
+            throw new UnsupportedOperationException("No thread CPU time in this JVM");
+        }
+        long end = start + TimeUnit.MILLISECONDS.toNanos(millis);
+        while (THREADS.getCurrentThreadCpuTime() < end) {
+            Thread.onSpinWait();
+        }
+    }
+
+    static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,118 @@
+package course.concurrency.m6_streams;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.TimeUnit;
+
+import static course.concurrency.m6_streams.AdaptiveExecutorBenchmark.compute;
+import static course.concurrency.m6_streams.AdaptiveExecutorBenchmark.sleep;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class AdaptiveExecutorTests {
+
+    private static final long MILLI = TimeUnit.MILLISECONDS.toNanos(1);
+    // adjust() is called by the tests only
+    private static final Duration NEVER = Duration.ofDays(1);
+
+    private final int cpus = Runtime.getRuntime().availableProcessors();
+    private AdaptiveExecutor executor;
+
+    @AfterEach
+    void tearDown() throws InterruptedException {
+        executor.shutdownNow();
+        assertTrue(executor.awaitTermination(5, TimeUnit.SECONDS));
+    }
+
+    @Test
+    void shouldGrowForBlockingTasksAndShrinkForCpuBound() {
+        executor = new AdaptiveExecutor(1, cpus * 8, NEVER);
+
+        // 9ms of 10 waiting: cpus * 0.9 * 10, capped at max; half way per interval, so 32 are plenty
+        for (int i = 0; i < 32; i++) {
+            executor.record(10 * MILLI, MILLI);
+            executor.adjust();
+        }
+        assertEquals(9.0, executor.getWaitRatio(), 1e-9);
+        assertEquals(Math.min(cpus * 8, (int) Math.round(cpus * 0.9 * 10)), executor.getTargetPoolSize());
+        assertEquals(executor.getTargetPoolSize(), executor.getCorePoolSize(), executor.toString());
+
+        // no waiting: cpus * 0.9 would leave a CPU idle, the CPU count is the floor
+        int grown = executor.getCorePoolSize();
+        executor.record(10 * MILLI, 10 * MILLI);
+        executor.adjust();
+        int halfWay = executor.getCorePoolSize();
+        assertEquals(cpus, executor.getTargetPoolSize());
+        assertEquals(grown - (grown - cpus) / 2, halfWay, executor.toString());
+        for (int i = 0; i < 32; i++) {
+            executor.record(10 * MILLI, 10 * MILLI);
+            executor.adjust();
+        }
+        assertEquals(0.0, executor.getWaitRatio());
+        assertEquals(cpus, executor.getCorePoolSize(), executor.toString());
+    }
+
+    @Test
+    void shouldStayWithinBounds() {
+        executor = new AdaptiveExecutor(2, 3, NEVER);
+
+        executor.record(10 * MILLI, MILLI);
+        executor.adjust();
+        assertEquals(3, executor.getTargetPoolSize());
+        assertEquals(3, executor.getCorePoolSize());
+        assertEquals(3, executor.getMaximumPoolSize());
+
+        executor.record(10 * MILLI, 10 * MILLI);
+        executor.adjust();
+        assertEquals(Math.max(2, Math.min(3, cpus)), executor.getTargetPoolSize());
+    }
+
+    @Test
+    void shouldGrowToMaxForTasksWithoutCpuTime() {
+        executor = new AdaptiveExecutor(1, 4, NEVER);
+        executor.record(10 * MILLI, 0);
+        executor.adjust();
+        assertEquals(Double.POSITIVE_INFINITY, executor.getWaitRatio());
+        assertEquals(4, executor.getTargetPoolSize());
+    }
+
+    @Test
+    void shouldKeepSizeWithoutCpuTimeMeasurement() {
+        executor = new AdaptiveExecutor(2, 8, NEVER);
+        executor.record(10 * MILLI, -1);
+        executor.adjust();
+        assertEquals(2, executor.getTargetPoolSize());
+        assertEquals(2, executor.getCorePoolSize());
+        assertEquals(0.0, executor.getWaitRatio());
+    }
+
+    @Test
+    void shouldMeasureTasks() throws InterruptedException {
+        executor = new AdaptiveExecutor(1, 1, NEVER);
+
+        // a sleeping task takes 5ms and almost no CPU
+        for (int i = 0; i < 5; i++) {
+            executor.execute(() -> sleep(5));
+        }
+        awaitIdle();
+        executor.adjust();
+        assertTrue(executor.getWaitRatio() > 1, executor.toString());
+
+        // CPU time, as in the benchmark, is measured when it's spent
+        for (int i = 0; i < 5; i++) {
+            executor.execute(() -> compute(2));
+        }
+        awaitIdle();
+        executor.adjust();
+        assertTrue(Double.isFinite(executor.getWaitRatio()), executor.toString());
+    }
+
+    private void awaitIdle() throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (executor.getCompletedTaskCount() < executor.getTaskCount()) {
+            assertTrue(System.currentTimeMillis() < deadline, executor.toString());
+            Thread.sleep(1);
+        }
+    }
+}
@@ -0,0 +1,86 @@
+package course.concurrency.m6_streams;
+
+import course.concurrency.m6_streams.DeadlineExecutor.Priority;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Tail latency of interactive tasks submitted while the pool works through
+ * a flood of batch tasks, FIFO pool against the priority/deadline pool.
+ */
+public class DeadlineExecutorBenchmark {
+
+    private static final int THREADS = 2;
+    private static final int BATCH_TASKS = 5000;
+    private static final long BATCH_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int INTERACTIVE_TASKS = 400;
+    private static final long INTERACTIVE_NANOS = TimeUnit.MICROSECONDS.toNanos(200);
+    private static final long INTERACTIVE_PERIOD_NANOS = TimeUnit.MILLISECONDS.toNanos(5);
+    private static final Duration INTERACTIVE_DEADLINE = Duration.ofMillis(100);
+
+    public static void main(String[] args) throws InterruptedException {
+        run("fifo", new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>()));
+        run("priority", new DeadlineExecutor(THREADS, Duration.ofMillis(200)));
+    }
+
+    private static void run(String name, ThreadPoolExecutor executor) throws InterruptedException {
+        LongAdder batchDone = new LongAdder();
+        for (int i = 0; i < BATCH_TASKS; i++) {
+            Runnable task = () -> {
+                LockSupport.parkNanos(BATCH_NANOS);
+                batchDone.increment();
+            };
+            if (executor instanceof DeadlineExecutor) {
+                ((DeadlineExecutor) executor).execute(task, Priority.BATCH, null);
+            } else {
+                executor.execute(task);
+            }
+        }
+
+        // response time of every interactive task, 0 if it never ran
+        AtomicLongArray responses = new AtomicLongArray(INTERACTIVE_TASKS);
+        for (int i = 0; i < INTERACTIVE_TASKS; i++) {
+            int index = i;
+            long submittedAt = System.nanoTime();
+            Runnable task = () -> {
+                LockSupport.parkNanos(INTERACTIVE_NANOS);
+                responses.set(index, System.nanoTime() - submittedAt);
+            };
+            if (executor instanceof DeadlineExecutor) {
+                ((DeadlineExecutor) executor).execute(task, Priority.INTERACTIVE, INTERACTIVE_DEADLINE);
+            } else {
+                executor.execute(task);
+            }
+            LockSupport.parkNanos(INTERACTIVE_PERIOD_NANOS);
+        }
+        // give the last interactive tasks time to finish, the batch backlog is dropped
+        Thread.sleep(INTERACTIVE_DEADLINE.toMillis() * 2);
+        long batchInWindow = batchDone.sum();
+        executor.shutdownNow();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        long[] served = new long[INTERACTIVE_TASKS];
+        int count = 0;
+        for (int i = 0; i < INTERACTIVE_TASKS; i++) {
+            if (responses.get(i) > 0) {
+                served[count++] = responses.get(i);
+            }
+        }
+        Arrays.sort(served, 0, count);
+        System.out.printf("%-9s interactive served=%3d/%d p50=%7.1fms p99=%7.1fms max=%7.1fms batch done=%d %s%n",
+                name, count, INTERACTIVE_TASKS, percentile(served, count, 0.5), percentile(served, count, 0.99),
+                count == 0 ? 0 : served[count - 1] / 1_000_000.0, batchInWindow,
+                executor instanceof DeadlineExecutor ? executor : "");
+    }
+
+    private static double percentile(long[] sorted, int count, double p) {
+        return count == 0 ? 0 : sorted[(int) Math.min(count - 1, count * p)] / 1_000_000.0;
+    }
+}
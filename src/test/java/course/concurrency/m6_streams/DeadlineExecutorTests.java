@@ -0,0 +1,118 @@
+package course.concurrency.m6_streams;
+
+import course.concurrency.m6_streams.DeadlineExecutor.Priority;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeadlineExecutorTests {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final Queue<String> processed = new LinkedBlockingQueue<>();
+
+    @Test
+    void shouldOrderByPriorityThenDeadline() throws InterruptedException {
+        DeadlineExecutor executor = new DeadlineExecutor(1, Duration.ofMinutes(1));
+        executor.execute(task("blocker"));
+        executor.execute(task("batch"), Priority.BATCH, null);
+        executor.execute(task("normal"));
+        executor.execute(task("interactive-late"), Priority.INTERACTIVE, Duration.ofSeconds(10));
+        executor.execute(task("interactive-soon"), Priority.INTERACTIVE, Duration.ofSeconds(5));
+        executor.execute(task("interactive-none"), Priority.INTERACTIVE, null);
+        finish(executor);
+
+        assertEquals(List.of("blocker", "interactive-soon", "interactive-late", "interactive-none", "normal", "batch"),
+                new ArrayList<>(processed));
+    }
+
+    @Test
+    void shouldSkipExpiredTasks() throws InterruptedException {
+        DeadlineExecutor executor = new DeadlineExecutor(1, Duration.ofMinutes(1));
+        executor.execute(task("blocker"));
+        executor.execute(task("expired"), Priority.INTERACTIVE, Duration.ofMillis(20));
+        executor.execute(task("batch"), Priority.BATCH, Duration.ofSeconds(10));
+        Thread.sleep(50);
+        finish(executor);
+
+        assertEquals(List.of("blocker", "batch"), new ArrayList<>(processed));
+        assertEquals(1, executor.getExpiredCount(Priority.INTERACTIVE));
+    }
+
+    @Test
+    void shouldAgeWaitingTasks() throws InterruptedException {
+        DeadlineExecutor executor = new DeadlineExecutor(1, Duration.ofMillis(50));
+        executor.execute(task("blocker"));
+        executor.execute(task("batch"), Priority.BATCH, null);
+        Thread.sleep(60);
+        executor.execute(task("interactive"), Priority.INTERACTIVE, null);
+        finish(executor);
+
+        assertEquals(List.of("blocker", "batch", "interactive"), new ArrayList<>(processed));
+        assertEquals(1, executor.getAgedCount(Priority.BATCH));
+    }
+
+    @Test
+    void shouldCancelExpiredFutures() throws InterruptedException {
+        DeadlineExecutor executor = new DeadlineExecutor(1, Duration.ofMinutes(1));
+        executor.execute(task("blocker"));
+        Future<String> expired = executor.submit(() -> "expired", Priority.INTERACTIVE, Duration.ofMillis(1));
+        // the deadline passes while the only thread is blocked
+        Thread.sleep(5);
+        latch.countDown();
+        executor.shutdown();
+
+        assertTrue(executor.awaitTermination(2, TimeUnit.SECONDS), "Expired task kept a worker waiting");
+        assertTrue(expired.isCancelled());
+        assertEquals(1, executor.getExpiredCount(Priority.INTERACTIVE));
+    }
+
+    @Test
+    void shouldPeekTaskTakenNext() throws InterruptedException {
+        DeadlineExecutor executor = new DeadlineExecutor(1, Duration.ofMinutes(1));
+        executor.execute(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException ignored) {}
+        });
+        executor.execute(task("expired"), Priority.INTERACTIVE, Duration.ofMillis(1));
+        executor.execute(task("normal"));
+        Thread.sleep(5);
+
+        BlockingQueue<Runnable> queue = executor.getQueue();
+        Runnable peeked = queue.peek();
+        assertSame(peeked, queue.poll());
+        assertEquals(1, executor.getExpiredCount(Priority.INTERACTIVE));
+
+        Runnable queued = task("queued");
+        executor.execute(queued);
+        assertEquals(List.of(queued), executor.shutdownNow());
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+    }
+
+    private void finish(DeadlineExecutor executor) throws InterruptedException {
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+    }
+
+    private Runnable task(String name) {
+        return () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            processed.add(name);
+        };
+    }
+}
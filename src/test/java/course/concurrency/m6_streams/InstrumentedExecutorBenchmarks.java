@@ -0,0 +1,88 @@
+package course.concurrency.m6_streams;
+
+import course.concurrency.m3_shared.metrics.Histogram;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Overhead of instrumentation: a batch of empty tasks through a plain and an
+ * instrumented pool, where the bookkeeping is the largest part of the work,
+ * and a bare histogram record from many threads. Most of the per-task cost
+ * is the three nanoTime calls, compare with nanoTime.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class InstrumentedExecutorBenchmarks {
+
+    private static final int BATCH = 1000;
+    private static final int THREADS = Runtime.getRuntime().availableProcessors();
+
+    @Param({"plain", "instrumented"})
+    public String executorType;
+
+    private ThreadPoolExecutor executor;
+
+    @Setup
+    public void setup() {
+        executor = executorType.equals("plain")
+                ? new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS, new LinkedBlockingQueue<>())
+                : InstrumentedExecutor.fixed(THREADS);
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        Options options = new OptionsBuilder()
+                .include(InstrumentedExecutorBenchmarks.class.getSimpleName())
+                .warmupIterations(3)
+                .measurementIterations(5)
+                .forks(1)
+                .build();
+
+        new Runner(options).run();
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BATCH)
+    public void batch() throws InterruptedException {
+        CountDownLatch done = new CountDownLatch(BATCH);
+        for (int i = 0; i < BATCH; i++) {
+            executor.execute(done::countDown);
+        }
+        done.await();
+    }
+
+    @State(Scope.Benchmark)
+    public static class HistogramState {
+        final Histogram histogram = new Histogram();
+    }
+
+    @State(Scope.Thread)
+    public static class Values {
+        long next;
+    }
+
+    @Benchmark
+    @Threads(Threads.MAX)
+    public void histogramRecord(HistogramState state, Values values) {
+        // spread over a few hundred buckets without calling the clock
+        state.histogram.record(values.next++ * 7919 & 0xFFFFF);
+    }
+
+    @Benchmark
+    public long nanoTime() {
+        return System.nanoTime();
+    }
+}
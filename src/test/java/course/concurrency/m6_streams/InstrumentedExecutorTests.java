@@ -0,0 +1,107 @@
+package course.concurrency.m6_streams;
+
+import course.concurrency.m3_shared.metrics.Histogram;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.SynchronousQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class InstrumentedExecutorTests {
+
+    @Test
+    void histogramShouldReportQuantiles() {
+        Histogram histogram = new Histogram();
+        for (int i = 1; i <= 1000; i++) {
+            histogram.record(i * 1000L);
+        }
+        Histogram.Snapshot snapshot = histogram.snapshot();
+
+        assertEquals(1000, snapshot.getCount());
+        assertEquals(500_500, snapshot.getMean(), 1);
+        assertEquals(1_000_000, snapshot.getMax());
+        assertEquals(500_000, snapshot.getValueAt(0.5), 500_000 / 8.0);
+        assertEquals(990_000, snapshot.getValueAt(0.99), 990_000 / 8.0);
+        assertEquals(1_000_000, snapshot.getValueAt(1));
+    }
+
+    @Test
+    void shouldSeparateQueueTimeFromExecutionTime() throws InterruptedException {
+        InstrumentedExecutor executor = InstrumentedExecutor.fixed(1);
+        for (int i = 0; i < 5; i++) {
+            executor.execute(() -> sleep(20));
+        }
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+
+        InstrumentedExecutor.Stats stats = executor.snapshot();
+        assertEquals(5, stats.getExecutionTime().getCount());
+        assertTrue(stats.getExecutionTime().getValueAt(0.5) >= TimeUnit.MILLISECONDS.toNanos(20), stats.toString());
+        // the last task waited for four others
+        assertTrue(stats.getQueueTime().getMax() >= TimeUnit.MILLISECONDS.toNanos(80), stats.toString());
+        assertTrue(stats.getQueueTime().getValueAt(0.2) < TimeUnit.MILLISECONDS.toNanos(20), stats.toString());
+    }
+
+    @Test
+    void shouldCountFailuresAndRejections() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        InstrumentedExecutor executor = new InstrumentedExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>(), new ThreadPoolExecutor.DiscardPolicy());
+        executor.submit(() -> {
+            latch.await();
+            throw new IllegalStateException("failed task");
+        });
+        executor.execute(() -> fail("Must be discarded"));
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+
+        InstrumentedExecutor.Stats stats = executor.snapshot();
+        assertEquals(1, stats.getFailed());
+        assertEquals(1, stats.getRejected());
+    }
+
+    @Test
+    void shouldPassRejectionToHandler() {
+        InstrumentedExecutor executor = new InstrumentedExecutor(1, 1, 0, TimeUnit.MILLISECONDS,
+                new SynchronousQueue<>());
+        executor.execute(() -> sleep(50));
+        assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+        assertEquals(1, executor.snapshot().getRejected());
+        executor.shutdown();
+    }
+
+    @Test
+    void shouldReturnSubmittedTasks() throws InterruptedException {
+        CountDownLatch latch = new CountDownLatch(1);
+        InstrumentedExecutor executor = InstrumentedExecutor.fixed(1);
+        executor.execute(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException ignored) {}
+        });
+        Runnable removed = () -> {};
+        Future<?> queued = executor.submit(() -> {});
+        executor.execute(removed);
+
+        assertTrue(executor.remove(removed));
+        assertFalse(executor.remove(removed));
+        // the future itself, so the caller can cancel it
+        assertEquals(List.of(queued), executor.shutdownNow());
+        assertTrue(executor.awaitTermination(2, TimeUnit.SECONDS));
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
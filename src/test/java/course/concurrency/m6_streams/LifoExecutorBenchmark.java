@@ -0,0 +1,72 @@
+package course.concurrency.m6_streams;
+
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Overload: tasks arrive 1.5 times faster than the pool serves them.
+ * Compares response time of served tasks and goodput, the tasks served
+ * within the SLA, for FIFO, LIFO and LIFO with expiry.
+ */
+public class LifoExecutorBenchmark {
+
+    private static final int THREADS = 2;
+    private static final int QUEUE_CAPACITY = 2000;
+    private static final long TASK_NANOS = TimeUnit.MILLISECONDS.toNanos(1);
+    private static final int TASKS_PER_TICK = 3;
+    private static final int TICKS = 3000;
+    private static final long SLA_NANOS = TimeUnit.MILLISECONDS.toNanos(100);
+
+    public static void main(String[] args) throws InterruptedException {
+        run("fifo", new ThreadPoolExecutor(THREADS, THREADS, 0, TimeUnit.MILLISECONDS,
+                new LinkedBlockingQueue<>(QUEUE_CAPACITY), new ThreadPoolExecutor.DiscardPolicy()));
+        run("lifo", new LifoExecutor(THREADS, QUEUE_CAPACITY, Duration.ZERO));
+        run("lifo-expiring", new LifoExecutor(THREADS, QUEUE_CAPACITY, Duration.ofNanos(SLA_NANOS)));
+    }
+
+    private static void run(String name, ThreadPoolExecutor executor) throws InterruptedException {
+        int total = TASKS_PER_TICK * TICKS;
+        // response time of every task, 0 if it was never served
+        AtomicLongArray responses = new AtomicLongArray(total);
+
+        for (int tick = 0; tick < TICKS; tick++) {
+            for (int i = 0; i < TASKS_PER_TICK; i++) {
+                int index = tick * TASKS_PER_TICK + i;
+                long submittedAt = System.nanoTime();
+                executor.execute(() -> {
+                    LockSupport.parkNanos(TASK_NANOS);
+                    responses.set(index, System.nanoTime() - submittedAt);
+                });
+            }
+            LockSupport.parkNanos(TimeUnit.MILLISECONDS.toNanos(1));
+        }
+        executor.shutdown();
+        executor.awaitTermination(1, TimeUnit.MINUTES);
+
+        long[] served = new long[total];
+        int count = 0;
+        int withinSla = 0;
+        for (int i = 0; i < total; i++) {
+            long response = responses.get(i);
+            if (response > 0) {
+                served[count++] = response;
+                if (response <= SLA_NANOS) {
+                    withinSla++;
+                }
+            }
+        }
+        Arrays.sort(served, 0, count);
+        System.out.printf("%-14s served=%5d/%d goodput=%5d p50=%8.1fms p99=%8.1fms %s%n",
+                name, count, total, withinSla, percentile(served, count, 0.5), percentile(served, count, 0.99),
+                executor instanceof LifoExecutor ? executor : "");
+    }
+
+    private static double percentile(long[] sorted, int count, double p) {
+        return count == 0 ? 0 : sorted[(int) Math.min(count - 1, count * p)] / 1_000_000.0;
+    }
+}
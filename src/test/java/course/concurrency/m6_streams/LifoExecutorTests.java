@@ -0,0 +1,104 @@
+package course.concurrency.m6_streams;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LifoExecutorTests {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final Queue<Integer> processed = new LinkedBlockingQueue<>();
+
+    @Test
+    void shouldNotStartExpiredTasks() throws InterruptedException {
+        LifoExecutor executor = new LifoExecutor(1, 100, Duration.ofMillis(50));
+        for (int i = 0; i < 4; i++) {
+            executor.execute(task(i));
+        }
+        Thread.sleep(100);
+        executor.execute(task(4));
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+
+        assertEquals(List.of(0, 4), new ArrayList<>(processed));
+        assertEquals(5, executor.getSubmittedCount());
+        assertEquals(2, executor.getStartedCount());
+        assertEquals(3, executor.getExpiredCount());
+        // expired tasks never started, so they have no wait time
+        assertEquals(2, executor.getWaitTime().getCount());
+    }
+
+    @Test
+    void shouldDropOldestWhenFull() throws InterruptedException {
+        LifoExecutor executor = new LifoExecutor(1, 2, Duration.ZERO);
+        for (int i = 0; i < 4; i++) {
+            executor.execute(task(i));
+        }
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+
+        assertEquals(List.of(0, 3, 2), new ArrayList<>(processed));
+        assertEquals(1, executor.getDroppedCount());
+        assertEquals(0, executor.getExpiredCount());
+    }
+
+    @Test
+    void shouldCancelDroppedAndExpiredFutures() throws InterruptedException {
+        LifoExecutor executor = new LifoExecutor(1, 1, Duration.ofMillis(1));
+        Future<?> running = executor.submit(task(0));
+        Future<?> dropped = executor.submit(task(1));
+        Future<?> expired = executor.submit(task(2));
+        // waits at least as long as the running task is held
+        Thread.sleep(5);
+        latch.countDown();
+        executor.shutdown();
+        assertTrue(executor.awaitTermination(2, TimeUnit.SECONDS), "Expired task kept a worker waiting");
+
+        assertTrue(dropped.isCancelled());
+        assertTrue(expired.isCancelled());
+        assertTrue(running.isDone() && !running.isCancelled());
+        assertEquals(1, executor.getDroppedCount());
+        assertEquals(1, executor.getExpiredCount());
+    }
+
+    @Test
+    void shouldReturnSubmittedTasks() throws InterruptedException {
+        LifoExecutor executor = new LifoExecutor(1, 10, Duration.ZERO);
+        executor.execute(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException ignored) {}
+        });
+        Runnable removed = task(1);
+        Runnable queued = task(2);
+        executor.execute(removed);
+        executor.execute(queued);
+
+        assertTrue(executor.remove(removed));
+        assertFalse(executor.remove(removed));
+        assertEquals(List.of(queued), executor.shutdownNow());
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+    }
+
+    private Runnable task(int value) {
+        return () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            processed.add(value);
+        };
+    }
+}
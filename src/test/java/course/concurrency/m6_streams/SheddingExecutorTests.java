@@ -0,0 +1,201 @@
+package course.concurrency.m6_streams;
+
+import course.concurrency.m6_streams.SheddingExecutor.Policy;
+import course.concurrency.m6_streams.SheddingExecutor.Rejection;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Future;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+public class SheddingExecutorTests {
+
+    private final CountDownLatch latch = new CountDownLatch(1);
+    private final Queue<Integer> processed = new LinkedBlockingQueue<>();
+
+    @Test
+    void shouldDiscardOldest() throws InterruptedException {
+        SheddingExecutor executor = new SheddingExecutor(1, 2, Policy.DISCARD_OLDEST);
+        for (int i = 0; i < 5; i++) {
+            executor.execute(task(i));
+        }
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+
+        assertEquals(List.of(0, 3, 4), new ArrayList<>(processed));
+        assertEquals(2, executor.getRejectedCount(Rejection.DISCARDED_OLDEST));
+    }
+
+    @Test
+    void shouldLimitCallerRuns() throws InterruptedException {
+        SheddingExecutor executor = new SheddingExecutor(1, 0, Policy.CALLER_RUNS);
+        executor.setCallerRunsLimit(1);
+        executor.execute(task(0));
+        // runs in this thread and submits one more, which is over the limit
+        executor.execute(() -> {
+            executor.execute(() -> processed.add(2));
+            processed.add(1);
+        });
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+
+        assertEquals(List.of(1, 0), new ArrayList<>(processed));
+        assertEquals(1, executor.getRejectedCount(Rejection.CALLER_RAN));
+        assertEquals(1, executor.getRejectedCount(Rejection.CALLER_LIMIT));
+    }
+
+    @Test
+    void shouldSkipExpiredTasks() throws InterruptedException {
+        SheddingExecutor executor = new SheddingExecutor(1, 10, Policy.DEADLINE);
+        executor.setMaxQueueTime(Duration.ofMillis(50));
+        for (int i = 0; i < 4; i++) {
+            executor.execute(task(i));
+        }
+        Thread.sleep(100);
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+
+        assertEquals(List.of(0), new ArrayList<>(processed));
+        assertEquals(3, executor.getRejectedCount(Rejection.EXPIRED));
+    }
+
+    @Test
+    void shouldRejectTasksThatWouldMissDeadline() throws InterruptedException {
+        SheddingExecutor executor = new SheddingExecutor(1, 10, Policy.DEADLINE);
+        executor.setMaxQueueTime(Duration.ofMillis(50));
+        executor.execute(() -> sleep(20));
+        // the only thread takes the next task after it has measured the first one
+        CountDownLatch started = new CountDownLatch(1);
+        Runnable first = task(0);
+        executor.execute(() -> {
+            started.countDown();
+            first.run();
+        });
+        started.await();
+
+        for (int i = 1; i < 5; i++) {
+            executor.execute(task(i));
+        }
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+
+        // one running, two queued: a third would wait 3 * 20ms
+        assertEquals(List.of(0, 1, 2), new ArrayList<>(processed));
+        assertEquals(2, executor.getRejectedCount(Rejection.DEADLINE));
+    }
+
+    @Test
+    void shouldCancelDroppedFutures() throws InterruptedException {
+        SheddingExecutor executor = new SheddingExecutor(1, 1, Policy.DISCARD_OLDEST);
+        Future<?> running = executor.submit(task(0));
+        Future<?> oldest = executor.submit(task(1));
+        Future<?> newest = executor.submit(task(2));
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+
+        assertTrue(oldest.isCancelled());
+        assertTrue(running.isDone() && !running.isCancelled());
+        assertTrue(newest.isDone() && !newest.isCancelled());
+        assertEquals(List.of(0, 2), new ArrayList<>(processed));
+    }
+
+    @Test
+    void shouldCancelExpiredFutures() throws InterruptedException {
+        SheddingExecutor executor = new SheddingExecutor(1, 10, Policy.DEADLINE);
+        executor.setMaxQueueTime(Duration.ofMillis(1));
+        // the next task waits at least as long as this one runs
+        executor.execute(() -> sleep(5));
+        Future<?> expired = executor.submit(task(0));
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+
+        assertTrue(expired.isCancelled());
+        assertTrue(processed.isEmpty());
+    }
+
+    @Test
+    void shouldShrinkAdmissionWhenQueueStands() throws InterruptedException {
+        SheddingExecutor executor = new SheddingExecutor(1, 100, Policy.DISCARD);
+        executor.setAdaptiveAdmission(Duration.ofMillis(1), Duration.ofMillis(10));
+        for (int i = 0; i < 40; i++) {
+            executor.execute(() -> sleep(5));
+        }
+        Thread.sleep(100);
+        for (int i = 0; i < 40; i++) {
+            executor.execute(() -> sleep(5));
+        }
+        executor.shutdownNow();
+
+        assertTrue(executor.getAdmissionLimit() < 100, executor.toString());
+        assertTrue(executor.getRejectedCount(Rejection.ADMISSION) > 0, executor.toString());
+    }
+
+    @Test
+    void shouldIgnoreAdmissionWithoutQueue() throws InterruptedException {
+        SheddingExecutor executor = new SheddingExecutor(2, 0, Policy.DISCARD);
+        executor.setAdaptiveAdmission(Duration.ofMillis(1), Duration.ofMillis(10));
+        for (int i = 0; i < 3; i++) {
+            executor.execute(task(i));
+        }
+        latch.countDown();
+        executor.shutdown();
+        executor.awaitTermination(2, TimeUnit.SECONDS);
+
+        assertEquals(2, processed.size());
+        assertEquals(0, executor.getRejectedCount(Rejection.ADMISSION));
+        assertEquals(1, executor.getRejectedCount(Rejection.DISCARDED));
+    }
+
+    @Test
+    void shouldReturnSubmittedTasks() throws InterruptedException {
+        SheddingExecutor executor = new SheddingExecutor(1, 10, Policy.DISCARD);
+        executor.execute(() -> {
+            try {
+                latch.await();
+            } catch (InterruptedException ignored) {}
+        });
+        Runnable removed = task(1);
+        Future<?> queued = executor.submit(task(2));
+        executor.execute(removed);
+
+        assertTrue(executor.remove(removed));
+        assertFalse(executor.remove(removed));
+        // the future itself, so the caller can cancel it
+        assertEquals(List.of(queued), executor.shutdownNow());
+        assertTrue(executor.awaitTermination(2, TimeUnit.SECONDS));
+    }
+
+    private Runnable task(int value) {
+        return () -> {
+            try {
+                latch.await();
+            } catch (InterruptedException e) {
+                throw new RuntimeException(e);
+            }
+            processed.add(value);
+        };
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
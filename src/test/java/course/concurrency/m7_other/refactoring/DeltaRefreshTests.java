@@ -0,0 +1,176 @@
+package course.concurrency.m7_other.refactoring;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.*;
+
+public class DeltaRefreshTests {
+
+    // changes received by each manager, null for a full reload
+    private final Map<String, List<List<Others.MountTableEntry>>> received = new ConcurrentHashMap<>();
+    private final Map<String, Boolean> failing = new ConcurrentHashMap<>();
+
+    private MountTableRefresherService service;
+    private Others.MountTable mountTable;
+    private String remote;
+    private String local;
+
+    @BeforeEach
+    public void setUp() {
+        service = new MountTableRefresherService() {
+            @Override
+            protected Others.MountTableManager getManager(String adminAddress) {
+                return new Others.MountTableManager(adminAddress) {
+                    @Override
+                    public boolean refresh() {
+                        return receive(adminAddress, null);
+                    }
+
+                    @Override
+                    public boolean refresh(List<Others.MountTableEntry> changes) {
+                        return receive(adminAddress, changes);
+                    }
+                };
+            }
+
+            @Override
+            public void log(String message) {
+            }
+        };
+        service.setCacheUpdateTimeout(10_000);
+        service.setRouterClientsCache(new Others.LoadingCache<>());
+        mountTable = new Others.MountTable();
+        service.setMountTable(mountTable);
+
+        Others.RouterStore routerStore = new Others.RouterStore();
+        Others.RouterState remoteState = new Others.RouterState("remote");
+        Others.RouterState localState = new Others.RouterState("local");
+        routerStore.add(remoteState);
+        routerStore.add(localState);
+        remote = remoteState.getAdminAddress();
+        // the local router is refreshed through the "local" manager
+        local = "local";
+        service.setRouterStore(routerStore);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        service.serviceStop();
+    }
+
+    private boolean receive(String adminAddress, List<Others.MountTableEntry> changes) {
+        received.computeIfAbsent(adminAddress, a -> Collections.synchronizedList(new ArrayList<>()))
+                .add(changes);
+        return !failing.getOrDefault(adminAddress, false);
+    }
+
+    private List<List<Others.MountTableEntry>> received(String adminAddress) {
+        List<List<Others.MountTableEntry>> changes = received.getOrDefault(adminAddress, List.of());
+        synchronized (changes) {
+            return new ArrayList<>(changes);
+        }
+    }
+
+    private static List<String> paths(List<Others.MountTableEntry> changes) {
+        return changes.stream().map(Others.MountTableEntry::getPath).collect(toList());
+    }
+
+    @Test
+    public void shouldSendWholeTableToUnknownRouters() {
+        mountTable.put("/a", "ns1");
+        mountTable.put("/b", "ns2");
+
+        service.refresh();
+
+        assertEquals(2, service.getFullRefreshes());
+        assertEquals(0, service.getDeltaRefreshes());
+        assertNull(received(remote).get(0));
+        assertNull(received(local).get(0));
+    }
+
+    @Test
+    public void shouldSkipRoutersAtCurrentVersion() {
+        mountTable.put("/a", "ns1");
+        service.refresh();
+        service.refresh();
+        service.refresh();
+
+        assertEquals(2, service.getFullRefreshes());
+        assertEquals(4, service.getSkippedRefreshes());
+        assertEquals(1, received(remote).size());
+        assertEquals(1, received(local).size());
+    }
+
+    @Test
+    public void shouldSendOnlyChangedEntries() {
+        for (int i = 0; i < 1000; i++) {
+            mountTable.put("/data" + i, "ns" + i);
+        }
+        service.refresh();
+
+        mountTable.put("/data7", "ns-moved");
+        mountTable.remove("/data8");
+        service.refresh();
+
+        List<Others.MountTableEntry> delta = received(remote).get(1);
+        assertEquals(List.of("/data7", "/data8"), paths(delta));
+        assertEquals("ns-moved", delta.get(0).getTarget());
+        assertTrue(delta.get(1).isRemoved());
+        assertEquals(paths(delta), paths(received(local).get(1)));
+        assertEquals(4, service.getPushedEntries());
+        assertEquals(999, mountTable.size());
+    }
+
+    @Test
+    public void shouldResendChangesToRouterThatFailed() {
+        mountTable.put("/a", "ns1");
+        service.refresh();
+
+        failing.put(remote, true);
+        mountTable.put("/b", "ns2");
+        service.refresh();
+        mountTable.put("/c", "ns3");
+        mountTable.put("/b", "ns4");
+        failing.put(remote, false);
+        service.refresh();
+
+        List<List<Others.MountTableEntry>> remoteChanges = received(remote);
+        assertEquals(3, remoteChanges.size());
+        assertEquals(List.of("/b"), paths(remoteChanges.get(1)));
+        // the last change of /b replaces the one the router didn't get
+        assertEquals(List.of("/c", "/b"), paths(remoteChanges.get(2)));
+        assertEquals("ns4", remoteChanges.get(2).get(1).getTarget());
+        // the local router got /b before, so only the changes after it
+        assertEquals(List.of("/c", "/b"), paths(received(local).get(2)));
+
+        service.refresh();
+        assertEquals(3, received(remote).size());
+    }
+
+    @Test
+    public void shouldKeepLatestChangePerPath() {
+        Others.MountTable table = new Others.MountTable();
+        long first = table.put("/a", "ns1");
+        table.put("/b", "ns1");
+        table.put("/a", "ns2");
+        table.remove("/b");
+
+        assertEquals(4, table.getVersion());
+        List<Others.MountTableEntry> all = table.changesSince(0);
+        assertEquals(List.of("/a", "/b"), paths(all));
+        assertEquals(3, all.get(0).getVersion());
+        assertEquals(List.of("/a", "/b"), paths(table.changesSince(first)));
+        assertEquals(List.of("/b"), paths(table.changesSince(3)));
+        assertTrue(table.changesSince(4).isEmpty());
+        assertEquals(1, table.size());
+    }
+}
@@ -0,0 +1,157 @@
+package course.concurrency.m7_other.refactoring;
+
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class LoadingCacheTests {
+
+    private final AtomicLong clock = new AtomicLong();
+    private final AtomicInteger loads = new AtomicInteger();
+
+    private Others.LoadingCache<String, String> cache(long maxLiveNanos) {
+        return new Others.LoadingCache<>(key -> key + "-" + loads.incrementAndGet(), maxLiveNanos, clock::get);
+    }
+
+    @Test
+    public void shouldLoadOnMissAndHitAfter() {
+        Others.LoadingCache<String, String> cache = cache(100);
+
+        assertEquals("a-1", cache.get("a"));
+        assertEquals("a-1", cache.get("a"));
+        assertEquals("b-2", cache.get("b"));
+
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+        assertEquals(1.0 / 3, cache.getHitRate(), 1e-9);
+    }
+
+    @Test
+    public void shouldReloadAfterMaxLiveTime() {
+        Others.LoadingCache<String, String> cache = cache(100);
+        assertEquals("a-1", cache.get("a"));
+
+        clock.set(99);
+        assertEquals("a-1", cache.get("a"));
+        clock.set(100);
+        assertEquals("a-2", cache.get("a"));
+    }
+
+    @Test
+    public void shouldEvictOnlyExpiredEntries() {
+        Others.LoadingCache<String, String> cache = cache(100);
+        cache.get("a");
+        cache.get("b");
+        clock.set(50);
+        cache.get("c");
+
+        clock.set(120);
+        cache.cleanUp();
+
+        assertEquals(1, cache.size());
+        assertEquals(2, cache.getEvictionCount());
+        assertEquals("c-3", cache.get("c"));
+    }
+
+    @Test
+    public void shouldEvictExpiredEntriesWhileAccessed() {
+        Others.LoadingCache<String, String> cache = cache(100);
+        for (int i = 0; i < 8; i++) {
+            cache.get("key" + i);
+        }
+        clock.set(200);
+        for (int i = 0; i < 2; i++) {
+            cache.get("other" + i);
+        }
+
+        // the old keys are gone without cleanUp(), a few per access
+        assertEquals(2, cache.size());
+        assertEquals(8, cache.getEvictionCount());
+    }
+
+    @Test
+    public void shouldLoadOnceForConcurrentMisses() throws Exception {
+        CountDownLatch loading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        Others.LoadingCache<String, String> cache = new Others.LoadingCache<>(key -> {
+            loading.countDown();
+            try {
+                release.await();
+            } catch (InterruptedException e) {
+                throw new IllegalStateException(e);
+            }
+            return key + "-" + loads.incrementAndGet();
+        }, 0, clock::get);
+
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        try {
+            Future<?>[] results = new Future<?>[8];
+            for (int i = 0; i < results.length; i++) {
+                results[i] = executor.submit(() -> cache.get("a"));
+            }
+            assertTrue(loading.await(1, TimeUnit.SECONDS));
+            Thread.sleep(50);
+            release.countDown();
+
+            for (Future<?> result : results) {
+                assertEquals("a-1", result.get(1, TimeUnit.SECONDS));
+            }
+            assertEquals(1, loads.get());
+        } finally {
+            executor.shutdownNow();
+        }
+    }
+
+    @Test
+    public void shouldNotCacheFailures() {
+        AtomicInteger attempts = new AtomicInteger();
+        Others.LoadingCache<String, String> cache = new Others.LoadingCache<>(key -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new IllegalStateException("Router is down");
+            }
+            return key;
+        }, 100, clock::get);
+
+        assertThrows(IllegalStateException.class, () -> cache.get("a"));
+        assertEquals("a", cache.get("a"));
+        assertEquals(1, cache.getLoadFailureCount());
+    }
+
+    @Test
+    public void shouldNotCacheErrors() {
+        AtomicInteger attempts = new AtomicInteger();
+        Others.LoadingCache<String, String> cache = new Others.LoadingCache<>(key -> {
+            if (attempts.incrementAndGet() == 1) {
+                throw new OutOfMemoryError("Router table is too large");
+            }
+            return key;
+        }, 100, clock::get);
+
+        assertThrows(OutOfMemoryError.class, () -> cache.get("a"));
+        assertEquals(0, cache.size());
+        assertTimeoutPreemptively(Duration.ofSeconds(5), () -> assertEquals("a", cache.get("a")));
+        assertEquals(1, cache.getLoadFailureCount());
+    }
+
+    @Test
+    public void shouldKeepAddedValuesWithoutMaxLiveTime() {
+        Others.LoadingCache<String, String> cache = new Others.LoadingCache<>();
+        cache.add("a", "value");
+        clock.set(Long.MAX_VALUE);
+        cache.cleanUp();
+
+        assertEquals("value", cache.get("a"));
+        assertNull(cache.get("b"));
+        cache.invalidate("a");
+        assertNull(cache.get("a"));
+    }
+}
@@ -7,8 +7,11 @@ import org.junit.jupiter.api.Test;
 import org.mockito.Mockito;
 
 import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
 
 import static java.util.stream.Collectors.toList;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.Mockito.*;
 
 public class MountTableRefresherServiceTests {
@@ -48,7 +51,7 @@ public class MountTableRefresherServiceTests {
         List<Others.RouterState> states = addresses.stream()
                 .map(a -> new Others.RouterState(a)).collect(toList());
         when(routerStore.getCachedRecords()).thenReturn(states);
-        // smth more
+        doReturn(manager).when(mockedService).getManager(anyString());
 
         // when
         mockedService.refresh();
@@ -61,25 +64,113 @@ public class MountTableRefresherServiceTests {
     @Test
     @DisplayName("All tasks failed")
     public void noSuccessfulTasks() {
+        // given
+        MountTableRefresherService mockedService = Mockito.spy(service);
+        List<String> addresses = List.of("123", "local6", "789", "local");
+
+        when(manager.refresh()).thenReturn(false);
 
+        List<Others.RouterState> states = addresses.stream()
+                .map(a -> new Others.RouterState(a)).collect(toList());
+        when(routerStore.getCachedRecords()).thenReturn(states);
+        doReturn(manager).when(mockedService).getManager(anyString());
+
+        // when
+        mockedService.refresh();
+
+        // then
+        verify(mockedService).log("Mount table entries cache refresh successCount=0,failureCount=4");
+        verify(routerClientsCache, times(4)).invalidate(anyString());
     }
 
     @Test
     @DisplayName("Some tasks failed")
     public void halfSuccessedTasks() {
+        // given
+        MountTableRefresherService mockedService = Mockito.spy(service);
+        List<String> addresses = List.of("123", "local6", "789", "local");
+
+        Others.MountTableManager failing = mock(Others.MountTableManager.class);
+        when(manager.refresh()).thenReturn(true);
+        when(failing.refresh()).thenReturn(false);
 
+        List<Others.RouterState> states = addresses.stream()
+                .map(a -> new Others.RouterState(a)).collect(toList());
+        when(routerStore.getCachedRecords()).thenReturn(states);
+        // remote routers fail, local ones succeed
+        doReturn(manager).when(mockedService).getManager("local");
+        doReturn(failing).when(mockedService).getManager(argThat(a -> !a.equals("local")));
+
+        // when
+        mockedService.refresh();
+
+        // then
+        verify(mockedService).log("Mount table entries cache refresh successCount=2,failureCount=2");
+        verify(routerClientsCache).invalidate(states.get(0).getAdminAddress());
+        verify(routerClientsCache).invalidate(states.get(2).getAdminAddress());
+        verify(routerClientsCache, times(2)).invalidate(anyString());
     }
 
     @Test
     @DisplayName("One task completed with exception")
     public void exceptionInOneTask() {
+        // given
+        MountTableRefresherService mockedService = Mockito.spy(service);
+        List<String> addresses = List.of("123", "local6", "789", "local");
+
+        Others.MountTableManager throwing = mock(Others.MountTableManager.class);
+        when(manager.refresh()).thenReturn(true);
+        when(throwing.refresh()).thenThrow(new IllegalStateException("Router is down"));
 
+        List<Others.RouterState> states = addresses.stream()
+                .map(a -> new Others.RouterState(a)).collect(toList());
+        when(routerStore.getCachedRecords()).thenReturn(states);
+        doReturn(manager).when(mockedService).getManager(anyString());
+        doReturn(throwing).when(mockedService).getManager(states.get(2).getAdminAddress());
+
+        // when
+        mockedService.refresh();
+
+        // then
+        verify(mockedService).log("Mount table entries cache refresh successCount=3,failureCount=1");
+        verify(routerClientsCache).invalidate(states.get(2).getAdminAddress());
+        verify(routerClientsCache, times(1)).invalidate(anyString());
     }
 
     @Test
     @DisplayName("One task exceeds timeout")
-    public void oneTaskExceedTimeout() {
+    public void oneTaskExceedTimeout() throws InterruptedException {
+        // given
+        service.setCacheUpdateTimeout(100);
+        MountTableRefresherService mockedService = Mockito.spy(service);
+        List<String> addresses = List.of("123", "local6", "789", "local");
+
+        Others.MountTableManager slow = mock(Others.MountTableManager.class);
+        CountDownLatch interrupted = new CountDownLatch(1);
+        when(manager.refresh()).thenReturn(true);
+        when(slow.refresh()).thenAnswer(invocation -> {
+            try {
+                Thread.sleep(10_000);
+            } catch (InterruptedException e) {
+                interrupted.countDown();
+            }
+            return true;
+        });
+
+        List<Others.RouterState> states = addresses.stream()
+                .map(a -> new Others.RouterState(a)).collect(toList());
+        when(routerStore.getCachedRecords()).thenReturn(states);
+        doReturn(manager).when(mockedService).getManager(anyString());
+        doReturn(slow).when(mockedService).getManager(states.get(0).getAdminAddress());
+
+        // when
+        mockedService.refresh();
 
+        // then
+        verify(mockedService).log("Not all router admins updated their cache");
+        verify(mockedService).log("Mount table entries cache refresh successCount=3,failureCount=1");
+        verify(routerClientsCache).invalidate(states.get(0).getAdminAddress());
+        assertTrue(interrupted.await(1, TimeUnit.SECONDS), "Timed out refresh must be cancelled");
     }
 
 }
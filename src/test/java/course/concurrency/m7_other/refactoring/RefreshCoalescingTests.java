@@ -0,0 +1,162 @@
+package course.concurrency.m7_other.refactoring;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RefreshCoalescingTests {
+
+    private final AtomicInteger refreshes = new AtomicInteger();
+    private volatile CountDownLatch roundStarted = new CountDownLatch(1);
+    private volatile CountDownLatch releaseRound = new CountDownLatch(0);
+    private volatile Error managerError;
+
+    private MountTableRefresherService service;
+
+    @BeforeEach
+    public void setUp() {
+        service = new MountTableRefresherService() {
+            @Override
+            protected Others.MountTableManager getManager(String adminAddress) {
+                if (managerError != null) {
+                    throw managerError;
+                }
+                return new Others.MountTableManager(adminAddress) {
+                    @Override
+                    public boolean refresh() {
+                        return awaitRelease();
+                    }
+
+                    @Override
+                    public boolean refresh(List<Others.MountTableEntry> changes) {
+                        return awaitRelease();
+                    }
+                };
+            }
+
+            @Override
+            public void log(String message) {
+            }
+        };
+        service.setCacheUpdateTimeout(10_000);
+        service.setRouterClientsCache(new Others.LoadingCache<>());
+        Others.RouterStore routerStore = new Others.RouterStore();
+        routerStore.add(new Others.RouterState("local"));
+        service.setRouterStore(routerStore);
+    }
+
+    private boolean awaitRelease() {
+        refreshes.incrementAndGet();
+        roundStarted.countDown();
+        try {
+            return releaseRound.await(5, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            return false;
+        }
+    }
+
+    @AfterEach
+    public void tearDown() {
+        service.serviceStop();
+    }
+
+    @Test
+    public void shouldMergeRequestsDuringRoundIntoOneFollowUp() throws Exception {
+        releaseRound = new CountDownLatch(1);
+        CompletableFuture<Void> first = service.requestRefresh();
+        assertTrue(roundStarted.await(1, TimeUnit.SECONDS));
+
+        List<CompletableFuture<Void>> during = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            service.getMountTable().put("/data" + i, "ns" + i);
+            during.add(service.requestRefresh());
+        }
+        assertFalse(first.isDone());
+        releaseRound.countDown();
+
+        first.get(1, TimeUnit.SECONDS);
+        for (CompletableFuture<Void> request : during) {
+            request.get(1, TimeUnit.SECONDS);
+        }
+        assertEquals(101, service.getRefreshRequests());
+        assertEquals(2, service.getRefreshRounds());
+        assertEquals(2, refreshes.get());
+    }
+
+    @Test
+    public void shouldServeRequestsAfterRoundsAreIdle() throws Exception {
+        service.requestRefresh().get(1, TimeUnit.SECONDS);
+        service.requestRefresh().get(1, TimeUnit.SECONDS);
+
+        assertEquals(2, service.getRefreshRounds());
+        // nothing changed between the rounds
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    public void shouldDebounceBurst() throws Exception {
+        service.setRefreshDebounce(100);
+        List<CompletableFuture<Void>> burst = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            burst.add(service.requestRefresh());
+            Thread.sleep(2);
+        }
+        for (CompletableFuture<Void> request : burst) {
+            request.get(1, TimeUnit.SECONDS);
+        }
+
+        assertEquals(1, service.getRefreshRounds());
+        assertEquals(1, refreshes.get());
+    }
+
+    @Test
+    public void shouldFailRoundOnError() throws Exception {
+        managerError = new Error("Broken manager");
+        ExecutionException e = assertThrows(ExecutionException.class,
+                () -> service.requestRefresh().get(1, TimeUnit.SECONDS));
+        assertSame(managerError, e.getCause());
+
+        // the next request gets a round of its own
+        managerError = null;
+        service.requestRefresh().get(1, TimeUnit.SECONDS);
+        assertEquals(2, service.getRefreshRounds());
+    }
+
+    @Test
+    public void shouldFailRequestsAfterStop() throws Exception {
+        releaseRound = new CountDownLatch(1);
+        CompletableFuture<Void> running = service.requestRefresh();
+        assertTrue(roundStarted.await(1, TimeUnit.SECONDS));
+        CompletableFuture<Void> pending = service.requestRefresh();
+
+        service.serviceStop();
+
+        ExecutionException e = assertThrows(ExecutionException.class, () -> pending.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+        // the interrupted round still completes
+        running.handle((ok, t) -> null).get(1, TimeUnit.SECONDS);
+        CompletableFuture<Void> late = service.requestRefresh();
+        e = assertThrows(ExecutionException.class, () -> late.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+    }
+
+    @Test
+    public void shouldStopWithoutCache() throws Exception {
+        MountTableRefresherService uninitialized = new MountTableRefresherService();
+        assertDoesNotThrow(uninitialized::serviceStop);
+        CompletableFuture<Void> late = uninitialized.requestRefresh();
+        ExecutionException e = assertThrows(ExecutionException.class, () -> late.get(1, TimeUnit.SECONDS));
+        assertInstanceOf(RejectedExecutionException.class, e.getCause());
+    }
+}
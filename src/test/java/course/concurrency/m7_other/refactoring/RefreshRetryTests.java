@@ -0,0 +1,217 @@
+package course.concurrency.m7_other.refactoring;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RefreshRetryTests {
+
+    private static final long BASE_DELAY = 50;
+
+    // failures left for each manager, -1 for always
+    private final Map<String, AtomicInteger> failures = new ConcurrentHashMap<>();
+    private final List<String> calls = Collections.synchronizedList(new ArrayList<>());
+    private final List<Long> callNanos = Collections.synchronizedList(new ArrayList<>());
+
+    private MountTableRefresherService service;
+    private Others.RouterStore routerStore;
+
+    @BeforeEach
+    public void setUp() {
+        service = new MountTableRefresherService() {
+            @Override
+            protected Others.MountTableManager getManager(String adminAddress) {
+                return new Others.MountTableManager(adminAddress) {
+                    @Override
+                    public boolean refresh() {
+                        return call(adminAddress);
+                    }
+
+                    @Override
+                    public boolean refresh(List<Others.MountTableEntry> changes) {
+                        return call(adminAddress);
+                    }
+                };
+            }
+
+            @Override
+            public void log(String message) {
+            }
+        };
+        service.setCacheUpdateTimeout(10_000);
+        service.setRouterClientsCache(new Others.LoadingCache<>());
+        service.setRetryPolicy(3, BASE_DELAY, 10_000);
+        routerStore = new Others.RouterStore();
+        service.setRouterStore(routerStore);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        service.serviceStop();
+    }
+
+    private boolean call(String adminAddress) {
+        calls.add(adminAddress);
+        callNanos.add(System.nanoTime());
+        AtomicInteger left = failures.get(adminAddress);
+        if (left == null) {
+            return true;
+        }
+        // refreshes of one router don't overlap
+        if (left.get() < 0) {
+            return false;
+        }
+        return left.get() == 0 || left.decrementAndGet() < 0;
+    }
+
+    private String addRouter(String name) {
+        Others.RouterState state = new Others.RouterState(name);
+        routerStore.add(state);
+        return state.getAdminAddress();
+    }
+
+    private static void await(java.util.function.BooleanSupplier condition) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (!condition.getAsBoolean()) {
+            assertTrue(System.currentTimeMillis() < deadline, "Timed out waiting");
+            Thread.sleep(5);
+        }
+    }
+
+    @Test
+    public void shouldRetryInBackgroundUntilSuccess() throws Exception {
+        String router = addRouter("remote");
+        failures.put(router, new AtomicInteger(2));
+
+        service.refresh();
+        // the caller doesn't wait for retries
+        assertEquals(1, calls.size());
+        assertEquals(0, service.getRetries());
+
+        await(() -> service.getConvergedRounds() == 1);
+        assertEquals(3, calls.size());
+        assertEquals(2, service.getRetries());
+        assertEquals(0, service.getAbandonedRetries());
+        assertTrue(service.getHealth(router) < 1);
+        assertTrue(service.getMaxConvergenceMillis() >= BASE_DELAY / 2 + BASE_DELAY);
+    }
+
+    @Test
+    public void shouldGiveUpAfterMaxRetries() throws Exception {
+        String router = addRouter("remote");
+        String healthy = addRouter("remote");
+        failures.put(router, new AtomicInteger(-1));
+
+        service.refresh();
+
+        await(() -> service.getAbandonedRetries() == 1);
+        assertEquals(4, calls.stream().filter(router::equals).count());
+        assertEquals(1, calls.stream().filter(healthy::equals).count());
+        assertEquals(1, service.getUnconvergedRounds());
+        assertEquals(0, service.getConvergedRounds());
+        assertEquals(1.0, service.getHealth(healthy));
+        assertTrue(service.getHealth(router) < 0.3);
+    }
+
+    @Test
+    public void shouldBackOffExponentially() throws Exception {
+        String router = addRouter("remote");
+        failures.put(router, new AtomicInteger(3));
+
+        service.refresh();
+        await(() -> service.getConvergedRounds() == 1);
+
+        assertEquals(4, callNanos.size());
+        long previous = 0;
+        for (int i = 1; i < callNanos.size(); i++) {
+            long gap = (callNanos.get(i) - callNanos.get(i - 1)) / 1_000_000;
+            // at least half of base * 2^(i-1), stretched by the falling health
+            assertTrue(gap >= (BASE_DELAY << (i - 1)) / 2, "Retry " + i + " after " + gap + " ms");
+            assertTrue(gap > previous, "Retry " + i + " after " + gap + " ms, previous " + previous);
+            previous = gap;
+        }
+    }
+
+    @Test
+    public void shouldNotStretchRetriesBeyondMaxDelay() throws Exception {
+        long maxDelay = 2 * BASE_DELAY;
+        service.setRetryPolicy(3, BASE_DELAY, maxDelay);
+        String router = addRouter("remote");
+        failures.put(router, new AtomicInteger(-1));
+
+        service.refresh();
+        await(() -> service.getAbandonedRetries() == 1);
+
+        assertTrue(service.getHealth(router) < 0.5);
+        for (int i = 1; i < callNanos.size(); i++) {
+            long gap = (callNanos.get(i) - callNanos.get(i - 1)) / 1_000_000;
+            // some slack for scheduling
+            assertTrue(gap < maxDelay + BASE_DELAY / 2, "Retry " + i + " after " + gap + " ms");
+        }
+    }
+
+    @Test
+    public void shouldNotStartSecondRetryChainForSameRouter() throws Exception {
+        service.setRetryPolicy(1, 200, 200);
+        String router = addRouter("remote");
+        failures.put(router, new AtomicInteger(2));
+
+        service.refresh();
+        service.getMountTable().put("/a", "ns1");
+        service.refresh();
+
+        // two rounds and one retry, the second round failure joins the running chain
+        await(() -> service.getConvergedRounds() + service.getUnconvergedRounds() == 2);
+        assertEquals(3, calls.size());
+        assertEquals(1, service.getRetries());
+    }
+
+    @Test
+    public void shouldStopRetryingRemovedRouter() throws Exception {
+        service.setRetryPolicy(3, 100, 100);
+        String removed = addRouter("remote");
+        String healthy = addRouter("remote");
+        failures.put(removed, new AtomicInteger(-1));
+
+        service.refresh();
+        routerStore.remove(removed);
+
+        // the round converged on the routers that are left
+        assertEquals(1, service.getConvergedRounds());
+        Thread.sleep(300);
+        assertEquals(0, service.getRetries());
+        // both refreshed once, in parallel
+        assertEquals(2, calls.size());
+        assertEquals(Set.of(removed, healthy), new HashSet<>(calls));
+        assertEquals(1.0, service.getHealth(removed));
+    }
+
+    @Test
+    public void shouldRefreshHealthyRoutersFirst() throws Exception {
+        service.setRetryPolicy(0, BASE_DELAY, BASE_DELAY);
+        service.setRefreshExecutor(Executors.newSingleThreadExecutor());
+        String flapping = addRouter("remote");
+        String healthy = addRouter("remote");
+        failures.put(flapping, new AtomicInteger(1));
+
+        service.refresh();
+        assertEquals(List.of(flapping, healthy), calls);
+
+        calls.clear();
+        service.getMountTable().put("/a", "ns1");
+        service.refresh();
+        assertEquals(List.of(healthy, flapping), calls);
+    }
+}
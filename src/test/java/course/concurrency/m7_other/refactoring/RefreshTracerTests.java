@@ -0,0 +1,213 @@
+package course.concurrency.m7_other.refactoring;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RefreshTracerTests {
+
+    // sleep before answering for each manager, negative to throw
+    private final Map<String, Long> delays = new ConcurrentHashMap<>();
+    private final Set<String> started = ConcurrentHashMap.newKeySet();
+
+    private MountTableRefresherService service;
+    private Others.RouterStore routerStore;
+
+    @BeforeEach
+    public void setUp() {
+        service = new MountTableRefresherService() {
+            @Override
+            protected Others.MountTableManager getManager(String adminAddress) {
+                return new Others.MountTableManager(adminAddress) {
+                    @Override
+                    public boolean refresh() {
+                        started.add(adminAddress);
+                        long delay = delays.getOrDefault(adminAddress, 0L);
+                        if (delay < 0) {
+                            throw new IllegalStateException("Router is down");
+                        }
+                        try {
+                            Thread.sleep(delay);
+                        } catch (InterruptedException e) {
+                            return false;
+                        }
+                        return true;
+                    }
+                };
+            }
+
+            @Override
+            public void log(String message) {
+            }
+        };
+        service.setCacheUpdateTimeout(1_000);
+        service.setRouterClientsCache(new Others.LoadingCache<>());
+        routerStore = new Others.RouterStore();
+        service.setRouterStore(routerStore);
+    }
+
+    @AfterEach
+    public void tearDown() {
+        service.serviceStop();
+    }
+
+    private String addRouter(String name) {
+        Others.RouterState state = new Others.RouterState(name);
+        routerStore.add(state);
+        return state.getAdminAddress();
+    }
+
+    // the outcome is recorded right after the result completes
+    private RefreshTracer.RouterStats awaitStats(String adminAddress, long count) throws InterruptedException {
+        long deadline = System.currentTimeMillis() + 5_000;
+        RefreshTracer.RouterStats stats;
+        while ((stats = service.getRefreshTracer().getStats(adminAddress)) == null
+                || stats.getLatency().getCount() < count) {
+            assertTrue(System.currentTimeMillis() < deadline, "No stats for " + adminAddress);
+            Thread.sleep(5);
+        }
+        return stats;
+    }
+
+    @Test
+    public void shouldReportSlowestRoutersFirst() throws Exception {
+        String fast = addRouter("remote");
+        String slow = addRouter("remote");
+        String slower = addRouter("remote");
+        delays.put(slow, 50L);
+        delays.put(slower, 100L);
+
+        service.refresh();
+        awaitStats(fast, 1);
+        awaitStats(slow, 1);
+        awaitStats(slower, 1);
+
+        List<RefreshTracer.RouterStats> slowest = service.getRefreshTracer().getSlowRouters(2);
+        assertEquals(2, slowest.size());
+        assertEquals(slower, slowest.get(0).getAdminAddress());
+        assertEquals(slow, slowest.get(1).getAdminAddress());
+        assertTrue(slowest.get(0).getP99() >= TimeUnit.MILLISECONDS.toNanos(100));
+        assertTrue(service.getSlowRouterReport(1).contains(slower));
+    }
+
+    @Test
+    public void shouldNotTimeOutRefreshesWhileTheyWaitForAThread() throws Exception {
+        service.setCacheUpdateTimeout(300);
+        service.setRefreshExecutor(Executors.newSingleThreadExecutor());
+        String first = addRouter("remote");
+        String queued = addRouter("remote");
+        delays.put(first, 200L);
+        delays.put(queued, 200L);
+
+        service.refresh();
+
+        // the second one waited 200ms and ran 200ms, longer than the timeout altogether
+        assertEquals(RefreshTracer.Outcome.SUCCESS, awaitStats(first, 1).getLastOutcome());
+        RefreshTracer.RouterStats stats = awaitStats(queued, 1);
+        assertEquals(RefreshTracer.Outcome.SUCCESS, stats.getLastOutcome());
+        assertTrue(stats.getMeanQueueNanos() >= TimeUnit.MILLISECONDS.toNanos(150));
+    }
+
+    @Test
+    public void shouldCancelQueuedRefreshesOnStop() throws Exception {
+        service.setCacheUpdateTimeout(10_000);
+        service.setRefreshExecutor(Executors.newSingleThreadExecutor());
+        String running = addRouter("remote");
+        String queued = addRouter("remote");
+        delays.put(running, 10_000L);
+
+        Thread refresh = new Thread(service::refresh);
+        refresh.start();
+        while (!started.contains(running)) {
+            Thread.sleep(5);
+        }
+        service.serviceStop();
+
+        refresh.join(5_000);
+        assertFalse(refresh.isAlive());
+        assertEquals(RefreshTracer.Outcome.CANCELLED, awaitStats(queued, 1).getLastOutcome());
+    }
+
+    @Test
+    public void shouldTraceOutcomes() throws Exception {
+        service.setCacheUpdateTimeout(100);
+        String ok = addRouter("remote");
+        String failing = addRouter("remote");
+        String timingOut = addRouter("remote");
+        delays.put(failing, -1L);
+        delays.put(timingOut, 10_000L);
+
+        service.refresh();
+
+        RefreshTracer.RouterStats success = awaitStats(ok, 1);
+        assertEquals(1, success.getCount(RefreshTracer.Outcome.SUCCESS));
+        assertEquals(RefreshTracer.Outcome.SUCCESS, success.getLastOutcome());
+        assertTrue(success.getLastSubmittedNanos() <= success.getLastStartedNanos());
+        assertTrue(success.getLastStartedNanos() <= success.getLastEndNanos());
+
+        assertEquals(RefreshTracer.Outcome.ERROR, awaitStats(failing, 1).getLastOutcome());
+
+        RefreshTracer.RouterStats timeout = awaitStats(timingOut, 1);
+        assertEquals(RefreshTracer.Outcome.TIMEOUT, timeout.getLastOutcome());
+        assertTrue(timeout.getLatency().getMax() >= TimeUnit.MILLISECONDS.toNanos(100));
+    }
+
+    @Test
+    public void shouldSeparateLocalAndRemoteRouters() throws Exception {
+        String local = addRouter("local");
+        String remote = addRouter("remote");
+
+        service.refresh();
+        service.getMountTable().put("/a", "ns1");
+        service.refresh();
+
+        assertTrue(awaitStats(local, 2).isLocal());
+        assertFalse(awaitStats(remote, 2).isLocal());
+        assertEquals(2, service.getRefreshTracer().getLocalLatency().getCount());
+        assertEquals(2, service.getRefreshTracer().getRemoteLatency().getCount());
+    }
+
+    @Test
+    public void shouldForgetRemovedRouter() throws Exception {
+        String remote = addRouter("remote");
+        service.refresh();
+        awaitStats(remote, 1);
+
+        routerStore.remove(remote);
+
+        assertNull(service.getRefreshTracer().getStats(remote));
+        assertTrue(service.getRefreshTracer().getSlowRouters(10).isEmpty());
+    }
+
+    @Test
+    public void shouldNotTraceRouterRemovedDuringRefresh() throws Exception {
+        String remote = addRouter("remote");
+        delays.put(remote, 200L);
+
+        Thread refresh = new Thread(service::refresh);
+        refresh.start();
+        while (!started.contains(remote)) {
+            Thread.sleep(5);
+        }
+        routerStore.remove(remote);
+        refresh.join(5_000);
+        long deadline = System.currentTimeMillis() + 5_000;
+        while (service.getRefreshTracer().getRemoteLatency().getCount() == 0) {
+            assertTrue(System.currentTimeMillis() < deadline, "Refresh not traced");
+            Thread.sleep(5);
+        }
+
+        // counted for all remote routers, but not kept for the removed one
+        assertNull(service.getRefreshTracer().getStats(remote));
+        assertTrue(service.getRefreshTracer().getSlowRouters(10).isEmpty());
+    }
+}
@@ -0,0 +1,149 @@
+package course.concurrency.m7_other.refactoring;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+public class RouterStoreTests {
+
+    @Test
+    public void shouldAddFindAndRemoveByAddress() {
+        Others.RouterStore store = new Others.RouterStore();
+        Others.RouterState first = new Others.RouterState("router");
+        Others.RouterState second = new Others.RouterState("router");
+
+        assertTrue(store.add(first));
+        assertTrue(store.add(second));
+        assertFalse(store.add(first));
+
+        assertSame(second, store.get(second.getAdminAddress()));
+        assertEquals(2, store.size());
+        assertSame(first, store.remove(first.getAdminAddress()));
+        assertNull(store.remove(first.getAdminAddress()));
+        assertNull(store.get(first.getAdminAddress()));
+        assertEquals(List.of(second), store.getCachedRecords());
+    }
+
+    @Test
+    public void shouldAddAndRemoveInBatches() {
+        Others.RouterStore store = new Others.RouterStore();
+        Others.RouterState first = new Others.RouterState("router");
+        Others.RouterState second = new Others.RouterState("router");
+        Others.RouterState third = new Others.RouterState("router");
+        store.add(first);
+
+        assertEquals(List.of(second, third), store.addAll(List.of(first, second, third)));
+        assertEquals(List.of(first, second, third), store.getCachedRecords());
+
+        assertEquals(List.of(third, first),
+                store.removeAll(List.of(third.getAdminAddress(), "unknown", first.getAdminAddress())));
+        assertEquals(List.of(second), store.getCachedRecords());
+        assertTrue(store.removeAll(List.of(first.getAdminAddress())).isEmpty());
+    }
+
+    @Test
+    public void shouldShareSnapshotUntilChange() {
+        Others.RouterStore store = new Others.RouterStore();
+        Others.RouterState first = new Others.RouterState("router");
+        store.add(first);
+
+        List<Others.RouterState> snapshot = store.getCachedRecords();
+        assertSame(snapshot, store.getCachedRecords());
+        assertThrows(UnsupportedOperationException.class, () -> snapshot.add(first));
+
+        Others.RouterState second = new Others.RouterState("router");
+        store.add(second);
+        // the old snapshot doesn't change
+        assertEquals(List.of(first), snapshot);
+        assertEquals(List.of(first, second), store.getCachedRecords());
+    }
+
+    @Test
+    public void shouldNotifyListeners() {
+        Others.RouterStore store = new Others.RouterStore();
+        List<String> events = new ArrayList<>();
+        Others.RouterStore.Listener listener = new Others.RouterStore.Listener() {
+            @Override
+            public void routerAdded(Others.RouterState state) {
+                events.add("added " + state.getAdminAddress());
+            }
+
+            @Override
+            public void routerRemoved(Others.RouterState state) {
+                events.add("removed " + state.getAdminAddress());
+            }
+        };
+        store.addListener(listener);
+        Others.RouterState state = new Others.RouterState("router");
+
+        store.add(state);
+        store.add(state);
+        store.remove(state.getAdminAddress());
+        store.remove(state.getAdminAddress());
+        store.removeListener(listener);
+        store.add(state);
+
+        assertEquals(List.of("added " + state.getAdminAddress(), "removed " + state.getAdminAddress()), events);
+    }
+
+    @Test
+    public void shouldReadConsistentSnapshotsWhileRoutersChange() throws Exception {
+        Others.RouterStore store = new Others.RouterStore();
+        // pairs are added and removed together, so a snapshot has both or neither
+        int pairs = 10_000;
+        ExecutorService executor = Executors.newFixedThreadPool(3);
+        CountDownLatch start = new CountDownLatch(1);
+        AtomicBoolean done = new AtomicBoolean();
+        List<Others.RouterState> states = new ArrayList<>();
+        for (int i = 0; i < pairs * 2; i++) {
+            states.add(new Others.RouterState("router"));
+        }
+        try {
+            Future<?> writer = executor.submit(() -> {
+                start.await();
+                for (int i = 0; i < pairs; i++) {
+                    List<Others.RouterState> pair = states.subList(2 * i, 2 * i + 2);
+                    store.addAll(pair);
+                    if (i % 2 == 0) {
+                        store.removeAll(List.of(pair.get(0).getAdminAddress(), pair.get(1).getAdminAddress()));
+                    }
+                }
+                done.set(true);
+                return null;
+            });
+            List<Future<Integer>> readers = new ArrayList<>();
+            for (int r = 0; r < 2; r++) {
+                readers.add(executor.submit(() -> {
+                    start.await();
+                    int reads = 0;
+                    while (!done.get()) {
+                        List<Others.RouterState> snapshot = store.getCachedRecords();
+                        assertEquals(0, snapshot.size() % 2, "Torn snapshot");
+                        assertEquals(snapshot.size(), new HashSet<>(snapshot).size());
+                        reads++;
+                    }
+                    return reads;
+                }));
+            }
+            start.countDown();
+            writer.get(10, TimeUnit.SECONDS);
+            for (Future<Integer> reader : readers) {
+                reader.get(10, TimeUnit.SECONDS);
+            }
+        } finally {
+            executor.shutdownNow();
+        }
+        assertEquals(pairs, store.size());
+        assertEquals(pairs, store.getCachedRecords().size());
+    }
+}